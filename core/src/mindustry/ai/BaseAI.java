@@ -96,23 +96,37 @@ public class BaseAI{
             }else{
                 var field = pathfinder.getField(data.team, Pathfinder.costGround, Pathfinder.fieldCore);
 
-                if(field.weights != null){
-                    int[][] weights = field.weights;
+                if(field.hasWeights()){
                     for(int i = 0; i < pathStep; i++){
                         int minCost = Integer.MAX_VALUE;
                         int cx = calcTile.x, cy = calcTile.y;
-                        boolean foundAny = false;
+                        boolean foundAny = false, waiting = false;
                         for(Point2 p : Geometry.d4){
                             int nx = cx + p.x, ny = cy + p.y;
 
                             Tile other = world.tile(nx, ny);
-                            if(other != null && weights[nx][ny] < minCost && weights[nx][ny] != -1){
-                                minCost = weights[nx][ny];
+                            if(other == null) continue;
+
+                            //on large maps, weights are only computed around requested tiles; continue once they are there
+                            if(!field.hasWeight(nx, ny)){
+                                field.request(nx, ny);
+                                waiting = true;
+                                continue;
+                            }
+
+                            int weight = field.weight(nx, ny);
+                            if(weight < minCost && weight != -1){
+                                minCost = weight;
                                 calcTile = other;
                                 foundAny = true;
                             }
                         }
 
+                        if(waiting){
+                            calcTile = world.tile(cx, cy);
+                            break;
+                        }
+
                         //didn't find anything, break out of loop, this will trigger a clear later
                         if(!foundAny){
                             calcCount = Integer.MAX_VALUE;
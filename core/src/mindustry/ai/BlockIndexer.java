@@ -7,6 +7,7 @@ import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
 import mindustry.content.*;
+import mindustry.core.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.game.Teams.*;
@@ -197,7 +198,49 @@ public class BlockIndexer{
 
     @Nullable
     public Tile findClosestFlag(float x, float y, Team team, BlockFlag flag){
-        return Geometry.findClosest(x, y, getAllied(team, flag));
+        return getAllied(team, flag).findClosest(x, y);
+    }
+
+    /** @return the closest block with a flag that belongs to any enemy of this team. */
+    @Nullable
+    public Tile findClosestEnemyFlag(float x, float y, Team team, BlockFlag flag){
+        Tile closest = null;
+        float closestDst = 0f;
+
+        Seq<TeamData> data = state.teams.present;
+        int size = data.isEmpty() ? Team.all.length : data.size;
+        for(int i = 0; i < size; i++){
+            Team enemy = data.isEmpty() ? Team.all[i] : data.items[i].team;
+            if(enemy == team) continue;
+
+            Tile tile = getFlagged(enemy)[flag.ordinal()].findClosest(x, y);
+            if(tile != null){
+                float dst = tile.dst2(x, y);
+                if(closest == null || dst < closestDst){
+                    closest = tile;
+                    closestDst = dst;
+                }
+            }
+        }
+
+        return closest;
+    }
+
+    /** Iterates through every allied block with a flag that is within range of a position. */
+    public void eachFlag(Team team, BlockFlag flag, float x, float y, float range, Cons<Tile> cons){
+        getAllied(team, flag).intersect(x, y, range, cons);
+    }
+
+    /** Iterates through every enemy block with a flag that is within range of a position. */
+    public void eachEnemyFlag(Team team, BlockFlag flag, float x, float y, float range, Cons<Tile> cons){
+        Seq<TeamData> data = state.teams.present;
+        int size = data.isEmpty() ? Team.all.length : data.size;
+        for(int i = 0; i < size; i++){
+            Team enemy = data.isEmpty() ? Team.all[i] : data.items[i].team;
+            if(enemy == team) continue;
+
+            getFlagged(enemy)[flag.ordinal()].intersect(x, y, range, cons);
+        }
     }
 
     public boolean eachBlock(Teamc team, float range, Boolf<Building> pred, Cons<Building> cons){
@@ -239,7 +282,7 @@ public class BlockIndexer{
         return size > 0;
     }
 
-    /** Get all enemy blocks with a flag. */
+    /** Get all enemy blocks with a flag. The result is copied into a shared array; prefer {@link #findClosestEnemyFlag} or {@link #eachEnemyFlag}. */
     public Seq<Tile> getEnemy(Team team, BlockFlag type){
         returnArray.clear();
         Seq<TeamData> data = state.teams.present;
@@ -438,19 +481,48 @@ public class BlockIndexer{
         if(tile.blockID() < blocksPresent.length) blocksPresent[tile.blockID()] = true;
     }
 
+    /**
+     * A set of flagged tiles, which are also sorted into square buckets by position.
+     * Buckets are kept up to date as tiles are added and removed, so that closest-tile and range queries only look at nearby tiles.
+     */
     public static class TileArray implements Iterable<Tile>{
+        /** Size of a bucket, in tiles. */
+        private static final int bucketSize = 16;
+        private static final Seq<Tile> candidates = new Seq<>(false, 16, Tile.class);
+
         Seq<Tile> tiles = new Seq<>(false, 16);
         IntSet contained = new IntSet();
+        /** Maps packed bucket coordinates to the tiles in that bucket. */
+        IntMap<Seq<Tile>> buckets = new IntMap<>();
+        /** Bounds of all buckets that have ever contained a tile, inclusive. */
+        int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE, maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
 
         public void add(Tile tile){
             if(contained.add(tile.pos())){
                 tiles.add(tile);
+
+                int bx = bucket(tile.x), by = bucket(tile.y);
+                Seq<Tile> bucket = buckets.get(Point2.pack(bx, by));
+                if(bucket == null){
+                    buckets.put(Point2.pack(bx, by), bucket = new Seq<>(false, 8, Tile.class));
+                }
+                bucket.add(tile);
+
+                minx = Math.min(minx, bx);
+                miny = Math.min(miny, by);
+                maxx = Math.max(maxx, bx);
+                maxy = Math.max(maxy, by);
             }
         }
 
         public void remove(Tile tile){
             if(contained.remove(tile.pos())){
                 tiles.remove(tile);
+
+                Seq<Tile> bucket = buckets.get(Point2.pack(bucket(tile.x), bucket(tile.y)));
+                if(bucket != null){
+                    bucket.remove(tile, true);
+                }
             }
         }
 
@@ -462,6 +534,140 @@ public class BlockIndexer{
             return tiles.first();
         }
 
+        /** @return the closest tile to a position, in world units. */
+        @Nullable
+        public Tile findClosest(float x, float y){
+            if(tiles.isEmpty()) return null;
+
+            int cx = bucket(World.toTile(x)), cy = bucket(World.toTile(y));
+            Tile closest = null;
+            float closestDst = 0f;
+
+            for(int r = startRing(cx, cy), end = endRing(cx, cy); r <= end; r++){
+                for(int by = Math.max(cy - r, miny); by <= Math.min(cy + r, maxy); by++){
+                    //only the edges of the ring are checked, unless it is a full row
+                    boolean row = by == cy - r || by == cy + r;
+                    int step = row ? 1 : Math.max(r * 2, 1);
+
+                    for(int bx = row ? Math.max(cx - r, minx) : cx - r; bx <= Math.min(cx + r, maxx); bx += step){
+                        if(bx < minx) continue;
+
+                        Seq<Tile> bucket = buckets.get(Point2.pack(bx, by));
+                        if(bucket == null) continue;
+
+                        for(int i = 0; i < bucket.size; i++){
+                            Tile tile = bucket.items[i];
+                            float dst = tile.dst2(x, y);
+                            if(closest == null || dst < closestDst){
+                                closest = tile;
+                                closestDst = dst;
+                            }
+                        }
+                    }
+                }
+
+                //nothing outside of this ring can be closer
+                float ringDst = ringDst(r);
+                if(closest != null && ringDst > 0f && closestDst <= ringDst * ringDst){
+                    break;
+                }
+            }
+
+            return closest;
+        }
+
+        /**
+         * Finds the closest tiles to a position.
+         * @param amount maximum amount of tiles to find
+         * @param out output array, which is cleared first; tiles are sorted by distance
+         */
+        public Seq<Tile> findClosest(float x, float y, int amount, Seq<Tile> out){
+            out.clear();
+            if(tiles.isEmpty() || amount <= 0) return out;
+
+            int cx = bucket(World.toTile(x)), cy = bucket(World.toTile(y));
+            candidates.clear();
+
+            for(int r = startRing(cx, cy), end = endRing(cx, cy); r <= end; r++){
+                for(int by = Math.max(cy - r, miny); by <= Math.min(cy + r, maxy); by++){
+                    boolean row = by == cy - r || by == cy + r;
+                    int step = row ? 1 : Math.max(r * 2, 1);
+
+                    for(int bx = row ? Math.max(cx - r, minx) : cx - r; bx <= Math.min(cx + r, maxx); bx += step){
+                        if(bx < minx) continue;
+
+                        Seq<Tile> bucket = buckets.get(Point2.pack(bx, by));
+                        if(bucket != null){
+                            candidates.addAll(bucket);
+                        }
+                    }
+                }
+
+                //stop once enough tiles are closer than anything outside of this ring
+                float ringDst = ringDst(r);
+                if(candidates.size >= amount && ringDst > 0f){
+                    float max = ringDst * ringDst;
+                    int inside = 0;
+                    for(int i = 0; i < candidates.size; i++){
+                        if(candidates.items[i].dst2(x, y) <= max) inside++;
+                    }
+                    if(inside >= amount) break;
+                }
+            }
+
+            candidates.sort(Structs.comparingFloat(t -> t.dst2(x, y)));
+            for(int i = 0; i < Math.min(amount, candidates.size); i++){
+                out.add(candidates.items[i]);
+            }
+            candidates.clear();
+
+            return out;
+        }
+
+        /** Iterates through every tile within range of a position, in world units. */
+        public void intersect(float x, float y, float range, Cons<Tile> cons){
+            if(tiles.isEmpty()) return;
+
+            //tiles are bucketed by their center tile, while their position may be offset by half a tile
+            float margin = range + tilesize;
+            int x1 = Math.max(bucket(World.toTile(x - margin)), minx), y1 = Math.max(bucket(World.toTile(y - margin)), miny);
+            int x2 = Math.min(bucket(World.toTile(x + margin)), maxx), y2 = Math.min(bucket(World.toTile(y + margin)), maxy);
+            float range2 = range * range;
+
+            for(int by = y1; by <= y2; by++){
+                for(int bx = x1; bx <= x2; bx++){
+                    Seq<Tile> bucket = buckets.get(Point2.pack(bx, by));
+                    if(bucket == null) continue;
+
+                    for(int i = 0; i < bucket.size; i++){
+                        Tile tile = bucket.items[i];
+                        if(tile.dst2(x, y) < range2){
+                            cons.get(tile);
+                        }
+                    }
+                }
+            }
+        }
+
+        /** @return the first ring around a bucket that overlaps the bounds. */
+        private int startRing(int cx, int cy){
+            return Math.max(Math.max(Math.max(minx - cx, cx - maxx), Math.max(miny - cy, cy - maxy)), 0);
+        }
+
+        /** @return the last ring around a bucket that overlaps the bounds. */
+        private int endRing(int cx, int cy){
+            return Math.max(Math.max(Math.abs(cx - minx), Math.abs(maxx - cx)), Math.max(Math.abs(cy - miny), Math.abs(maxy - cy)));
+        }
+
+        /** @return minimum distance from a position in the center bucket to any tile outside of a ring, in world units. */
+        private static float ringDst(int ring){
+            return (ring * bucketSize - 1) * tilesize;
+        }
+
+        private static int bucket(int coord){
+            return Math.floorDiv(coord, bucketSize);
+        }
+
         @Override
         public Iterator<Tile> iterator(){
             return tiles.iterator();
@@ -0,0 +1,368 @@
+package mindustry.ai;
+
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.ai.Pathfinder.*;
+
+import java.util.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Hierarchical weight storage for a {@link Flowfield}, used on very large maps.
+ * The map is split into square clusters. Only the distances of the border tiles of each cluster are kept for every cluster;
+ * they are solved by flooding one cluster at a time from the borders of its neighbours, until no border distance changes.
+ * Tile weights are then only computed for clusters that units are in, seeded with the distances of the cluster's border.
+ * The weights are the same as the ones of a flat field; only the memory is bounded by the clusters units are in.
+ * Unless noted otherwise, methods may only be called by the pathfinding thread.
+ */
+public class FlowClusters{
+    /** Size of a cluster, in tiles. */
+    public static final int clusterSize = 32;
+    /** Tile weights of clusters that have not been requested for this amount of milliseconds are discarded. */
+    public static final long unloadTime = 10000;
+    /** Weight of tiles that have not been computed yet, or that can't reach any target. */
+    public static final int unknown = Integer.MAX_VALUE;
+
+    static final int impassable = -1;
+
+    final Flowfield field;
+    final int width, height, cwidth, cheight;
+    final Cluster[] clusters;
+
+    /** Whether the border distances need to be solved again from scratch, after the current solve is published. */
+    boolean graphDirty = true;
+
+    /** Clusters whose border distances may change, as the borders of their neighbours did. */
+    private final IntQueue pending = new IntQueue();
+    //scratch data for local floods
+    private final int[] local = new int[clusterSize * clusterSize];
+    private final IntQueue queue = new IntQueue();
+    private final IntSeq targets = new IntSeq();
+
+    public FlowClusters(Flowfield field, int width, int height){
+        this.field = field;
+        this.width = width;
+        this.height = height;
+        this.cwidth = (width + clusterSize - 1) / clusterSize;
+        this.cheight = (height + clusterSize - 1) / clusterSize;
+        this.clusters = new Cluster[cwidth * cheight];
+
+        for(int cy = 0; cy < cheight; cy++){
+            for(int cx = 0; cx < cwidth; cx++){
+                Cluster cluster = new Cluster();
+                cluster.x = cx * clusterSize;
+                cluster.y = cy * clusterSize;
+                cluster.width = Math.min(clusterSize, width - cluster.x);
+                cluster.height = Math.min(clusterSize, height - cluster.y);
+                clusters[cx + cy * cwidth] = cluster;
+            }
+        }
+    }
+
+    /** @return the weight of a tile, or {@link #unknown} if its cluster has not been computed. Safe to call from the main thread. */
+    public int weight(int x, int y){
+        Cluster cluster = clusters[x / clusterSize + y / clusterSize * cwidth];
+        int[] weights = cluster.weights;
+        return weights == null ? unknown : weights[(x - cluster.x) + (y - cluster.y) * clusterSize];
+    }
+
+    /** @return whether the weights of the cluster of a tile have been computed. Safe to call from the main thread. */
+    public boolean loaded(int x, int y){
+        return clusters[x / clusterSize + y / clusterSize * cwidth].weights != null;
+    }
+
+    /**
+     * Requests the tile weights around a position, as a unit is there. Neighbouring clusters are requested as well when the position is close to their border.
+     * Main thread only.
+     */
+    public void request(int x, int y){
+        int cx = x / clusterSize, cy = y / clusterSize, lx = x % clusterSize, ly = y % clusterSize;
+        int minx = lx <= 1 ? -1 : 0, maxx = lx >= clusterSize - 2 ? 1 : 0, miny = ly <= 1 ? -1 : 0, maxy = ly >= clusterSize - 2 ? 1 : 0;
+
+        for(int dx = minx; dx <= maxx; dx++){
+            for(int dy = miny; dy <= maxy; dy++){
+                int ox = cx + dx, oy = cy + dy;
+                if(ox >= 0 && oy >= 0 && ox < cwidth && oy < cheight){
+                    //a benign race: at worst, the request is seen one update later
+                    clusters[ox + oy * cwidth].requested = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the clusters around a changed tile as dirty; their weights are filled again right away, from the last solved borders.
+     * Distances anywhere may change, so the borders are solved again once the current solve is published.
+     */
+    public void tileChanged(int x, int y){
+        //packed tile data depends on direct neighbours, so clusters next to the tile are affected too
+        for(int dx = -1; dx <= 1; dx++){
+            for(int dy = -1; dy <= 1; dy++){
+                int nx = x + dx, ny = y + dy;
+                if(nx >= 0 && ny >= 0 && nx < width && ny < height){
+                    clusters[nx / clusterSize + ny / clusterSize * cwidth].weightsDirty = true;
+                }
+            }
+        }
+        graphDirty = true;
+    }
+
+    /** Called when the targets of the field have changed; every cluster may have different weights afterwards. */
+    public void targetsChanged(){
+        graphDirty = true;
+    }
+
+    /** @return whether the border distances are solved, and all requested clusters have up to date weights. */
+    public boolean converged(){
+        if(graphDirty || pending.size > 0) return false;
+        for(Cluster cluster : clusters){
+            if(cluster.weights != null && cluster.weightsDirty) return false;
+        }
+        return true;
+    }
+
+    /** Updates the border distances and requested tile weights for up to the specified amount of nanoseconds. A negative time means no limit. */
+    public void update(long nsToRun){
+        long start = Time.nanos();
+
+        //clusters are filled from the last complete solution first, so units can move while the borders are solved again
+        if(!fillClusters(start, nsToRun)) return;
+
+        //changes during a solve wait until it is published, so frequent changes never keep a solve from finishing
+        if(graphDirty && pending.size == 0){
+            reset();
+        }
+
+        //border distances are only published once complete, so units never see half solved borders
+        if(pending.size > 0){
+            while(pending.size > 0){
+                Cluster cluster = clusters[pending.removeLast()];
+                cluster.queued = false;
+                relax(cluster);
+                if(nsToRun >= 0 && Time.timeSinceNanos(start) > nsToRun) return;
+            }
+            publish();
+            fillClusters(start, nsToRun);
+        }
+    }
+
+    /**
+     * Fills requested clusters without weights, and loaded clusters with outdated weights. Unloads clusters that are not used anymore.
+     * @return false if the time ran out.
+     */
+    private boolean fillClusters(long start, long nsToRun){
+        long time = Time.millis();
+
+        for(Cluster cluster : clusters){
+            if(cluster.requested){
+                cluster.requested = false;
+                cluster.lastUse = time;
+            }else if(cluster.weights != null && time - cluster.lastUse > unloadTime){
+                //no units have been here for a while
+                cluster.weights = null;
+                continue;
+            }
+
+            if(time - cluster.lastUse <= unloadTime && (cluster.weights == null || cluster.weightsDirty)){
+                fill(cluster);
+                if(nsToRun >= 0 && Time.timeSinceNanos(start) > nsToRun) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Forgets the border distances, and starts solving them again from the clusters with targets. */
+    private void reset(){
+        graphDirty = false;
+
+        for(Cluster cluster : clusters){
+            Arrays.fill(cluster.solving, unknown);
+        }
+
+        targets.clear();
+        synchronized(field.targets){
+            targets.addAll(field.targets);
+        }
+
+        for(int t = 0; t < targets.size; t++){
+            int tx = Point2.x(targets.items[t]), ty = Point2.y(targets.items[t]);
+            if(tx >= 0 && ty >= 0 && tx < width && ty < height){
+                enqueue(tx / clusterSize, ty / clusterSize);
+            }
+        }
+
+        //without targets, nothing can be reached
+        if(pending.size == 0){
+            publish();
+        }
+    }
+
+    /** Floods a cluster from its targets and the borders of its neighbours, and queues the neighbours next to border tiles that got closer. */
+    private void relax(Cluster cluster){
+        beginFlood();
+        seedTargets(cluster);
+
+        int cx = cluster.x / clusterSize, cy = cluster.y / clusterSize;
+
+        for(int side = 0; side < 4; side++){
+            Point2 d = Geometry.d4[side];
+            int ox = cx + d.x, oy = cy + d.y;
+            if(ox < 0 || oy < 0 || ox >= cwidth || oy >= cheight) continue;
+
+            Cluster other = clusters[ox + oy * cwidth];
+            int opposite = (side + 2) % 4, length = side % 2 == 0 ? cluster.height : cluster.width;
+
+            for(int i = 0; i < length; i++){
+                int dist = other.solving[opposite * clusterSize + i];
+                if(dist == unknown) continue;
+
+                int x = borderX(cluster, side, i), y = borderY(cluster, side, i);
+                int cost = field.cost.getCost(field.team, pathfinder.tiles[x + y * width]);
+                if(cost != impassable){
+                    seed(cluster, x, y, dist + cost);
+                }
+            }
+        }
+
+        flood(cluster);
+
+        for(int side = 0; side < 4; side++){
+            Point2 d = Geometry.d4[side];
+            int length = side % 2 == 0 ? cluster.height : cluster.width;
+            boolean changed = false;
+
+            for(int i = 0; i < length; i++){
+                int value = local[(borderX(cluster, side, i) - cluster.x) + (borderY(cluster, side, i) - cluster.y) * clusterSize];
+                int index = side * clusterSize + i;
+                if(value < cluster.solving[index]){
+                    cluster.solving[index] = value;
+                    changed = true;
+                }
+            }
+
+            int ox = cx + d.x, oy = cy + d.y;
+            if(changed && ox >= 0 && oy >= 0 && ox < cwidth && oy < cheight){
+                enqueue(ox, oy);
+            }
+        }
+    }
+
+    /** Publishes the solved border distances. Only clusters with different distances need new tile weights. */
+    private void publish(){
+        for(Cluster cluster : clusters){
+            if(!Arrays.equals(cluster.solving, cluster.dist)){
+                System.arraycopy(cluster.solving, 0, cluster.dist, 0, cluster.dist.length);
+                cluster.weightsDirty = true;
+            }
+        }
+
+        //clusters containing targets always need new weights, as the targets may have moved inside them
+        for(int t = 0; t < targets.size; t++){
+            int tx = Point2.x(targets.items[t]), ty = Point2.y(targets.items[t]);
+            if(tx >= 0 && ty >= 0 && tx < width && ty < height){
+                clusters[tx / clusterSize + ty / clusterSize * cwidth].weightsDirty = true;
+            }
+        }
+    }
+
+    /** Computes the tile weights of a cluster, starting from its border distances and any targets inside it. */
+    private void fill(Cluster cluster){
+        beginFlood();
+
+        for(int side = 0; side < 4; side++){
+            int length = side % 2 == 0 ? cluster.height : cluster.width;
+            for(int i = 0; i < length; i++){
+                int dist = cluster.dist[side * clusterSize + i];
+                if(dist != unknown){
+                    seed(cluster, borderX(cluster, side, i), borderY(cluster, side, i), dist);
+                }
+            }
+        }
+
+        seedTargets(cluster);
+        flood(cluster);
+
+        //publish a new array, so the main thread never sees partially computed weights
+        cluster.weights = Arrays.copyOf(local, local.length);
+        cluster.weightsDirty = false;
+    }
+
+    private void enqueue(int cx, int cy){
+        Cluster cluster = clusters[cx + cy * cwidth];
+        if(!cluster.queued){
+            cluster.queued = true;
+            pending.addFirst(cx + cy * cwidth);
+        }
+    }
+
+    /** @return x coordinate of a border tile of a cluster; sides are in {@link Geometry#d4} order. */
+    private static int borderX(Cluster cluster, int side, int i){
+        return side == 0 ? cluster.x + cluster.width - 1 : side == 2 ? cluster.x : cluster.x + i;
+    }
+
+    /** @return y coordinate of a border tile of a cluster; sides are in {@link Geometry#d4} order. */
+    private static int borderY(Cluster cluster, int side, int i){
+        return side == 1 ? cluster.y + cluster.height - 1 : side == 3 ? cluster.y : cluster.y + i;
+    }
+
+    private void beginFlood(){
+        Arrays.fill(local, unknown);
+        queue.clear();
+    }
+
+    private void seedTargets(Cluster cluster){
+        for(int t = 0; t < targets.size; t++){
+            int tx = Point2.x(targets.items[t]), ty = Point2.y(targets.items[t]);
+            if(tx >= cluster.x && ty >= cluster.y && tx < cluster.x + cluster.width && ty < cluster.y + cluster.height){
+                seed(cluster, tx, ty, 0);
+            }
+        }
+    }
+
+    private void seed(Cluster cluster, int x, int y, int value){
+        int index = (x - cluster.x) + (y - cluster.y) * clusterSize;
+        if(value < local[index]){
+            local[index] = value;
+            queue.addFirst(index);
+        }
+    }
+
+    /** Propagates weights from the seeded tiles, without leaving the cluster. */
+    private void flood(Cluster cluster){
+        while(queue.size > 0){
+            int index = queue.removeLast();
+            int lx = index % clusterSize, ly = index / clusterSize, weight = local[index];
+
+            for(Point2 point : Geometry.d4){
+                int nx = lx + point.x, ny = ly + point.y;
+                if(nx < 0 || ny < 0 || nx >= cluster.width || ny >= cluster.height) continue;
+
+                int cost = field.cost.getCost(field.team, pathfinder.tiles[cluster.x + nx + (cluster.y + ny) * width]);
+                int other = nx + ny * clusterSize;
+                if(cost != impassable && weight + cost < local[other]){
+                    local[other] = weight + cost;
+                    queue.addFirst(other);
+                }
+            }
+        }
+    }
+
+    static class Cluster{
+        /** Bounds of this cluster, in tiles. */
+        int x, y, width, height;
+        /** Distance of each border tile to the closest target, indexed by side * clusterSize + position along the side. */
+        final int[] dist = new int[clusterSize * 4], solving = new int[clusterSize * 4];
+        /** Tile weights indexed by local x + local y * clusterSize, or null if not computed. Read by the main thread. */
+        volatile int[] weights;
+        boolean weightsDirty = true, queued;
+        /** Set by the main thread when units need the weights of this cluster. */
+        boolean requested;
+        long lastUse;
+
+        {
+            Arrays.fill(dist, unknown);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package mindustry.ai;
 
 import arc.*;
 import arc.func.*;
+import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
@@ -12,11 +13,15 @@ import mindustry.core.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
+import mindustry.net.Administration.*;
 import mindustry.world.*;
 import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.storage.*;
 import mindustry.world.meta.*;
 
+import java.util.*;
+import java.util.concurrent.*;
+
 import static mindustry.Vars.*;
 
 public class Pathfinder implements Runnable{
@@ -24,6 +29,8 @@ public class Pathfinder implements Runnable{
     private static final int updateFPS = 60;
     private static final int updateInterval = 1000 / updateFPS;
     private static final int impassable = -1;
+    /** Maps with at least this many tiles use hierarchical flow fields, see {@link FlowClusters}. */
+    public static int hierarchicalArea = 400 * 400;
 
     public static final int
         fieldCore = 0,
@@ -63,14 +70,22 @@ public class Pathfinder implements Runnable{
     //maps team, cost, type to flow field
     Flowfield[][][] cache;
 
-    /** tile data, see PathTileStruct */
-    int[][] tiles = new int[0][0];
+    /** tile data, see PathTileStruct; indexed by x + y * width */
+    int[] tiles = {};
+    /** size of the tile data */
+    int width, height;
     /** unordered array of path data for iteration only. DO NOT iterate or access this in the main thread. */
     Seq<Flowfield> threadList = new Seq<>(), mainList = new Seq<>();
     /** handles task scheduling on the update thread. */
     TaskQueue queue = new TaskQueue();
     /** Current pathfinding thread */
     @Nullable Thread thread;
+    /** Worker pool that updates flow fields in parallel. Null when only one thread is used. */
+    @Nullable ExecutorService workers;
+    /** Amount of threads in the worker pool. */
+    int workerCount = 1;
+    /** Reused list of flow field update tasks submitted to the workers. Pathfinding thread only. */
+    ArrayList<Callable<Object>> workerTasks = new ArrayList<>();
     IntSeq tmpArray = new IntSeq();
 
     public Pathfinder(){
@@ -80,13 +95,15 @@ public class Pathfinder implements Runnable{
             stop();
 
             //reset and update internal tile array
-            tiles = new int[world.width()][world.height()];
+            width = world.width();
+            height = world.height();
+            tiles = new int[width * height];
             threadList = new Seq<>();
             mainList = new Seq<>();
             clearCache();
 
             for(Tile tile : world.tiles){
-                tiles[tile.x][tile.y] = packTile(tile);
+                tiles[tile.x + tile.y * width] = packTile(tile);
             }
 
             preloadPath(getField(state.rules.waveTeam, costGround, fieldCore));
@@ -140,9 +157,25 @@ public class Pathfinder implements Runnable{
         );
     }
 
+    /** @return the amount of threads used to update flow fields. */
+    public static int threadCount(){
+        int threads = Config.pathfinderThreads.num();
+        return threads > 0 ? threads : Mathf.clamp(OS.cores - 1, 1, 4);
+    }
+
     /** Starts or restarts the pathfinding thread. */
     private void start(){
         stop();
+
+        workerCount = threadCount();
+        if(workerCount > 1){
+            workers = Executors.newFixedThreadPool(workerCount, r -> {
+                Thread thread = new Thread(r, "Pathfinder Worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
         thread = Threads.daemon("Pathfinder", this);
     }
 
@@ -152,6 +185,10 @@ public class Pathfinder implements Runnable{
             thread.interrupt();
             thread = null;
         }
+        if(workers != null){
+            workers.shutdownNow();
+            workers = null;
+        }
         queue.clear();
     }
 
@@ -162,9 +199,12 @@ public class Pathfinder implements Runnable{
 
         int x = tile.x, y = tile.y;
 
+        //tiles are packed here, but only written on the pathfinding thread while no workers are running
+        IntSeq packed = new IntSeq();
         tile.getLinkedTiles(t -> {
-            if(Structs.inBounds(t.x, t.y, tiles)){
-                tiles[t.x][t.y] = packTile(t);
+            if(t.x < width && t.y < height){
+                packed.add(t.x + t.y * width);
+                packed.add(packTile(t));
             }
         });
 
@@ -179,6 +219,10 @@ public class Pathfinder implements Runnable{
         }
 
         queue.post(() -> {
+            for(int i = 0; i < packed.size; i += 2){
+                tiles[packed.items[i]] = packed.items[i + 1];
+            }
+
             for(Flowfield data : threadList){
                 updateTargets(data, x, y);
             }
@@ -193,11 +237,40 @@ public class Pathfinder implements Runnable{
             try{
 
                 if(state.isPlaying()){
+                    //tasks modify flow fields, so they must never run while the workers are active
                     queue.run();
 
-                    //total update time no longer than maxUpdate
-                    for(Flowfield data : threadList){
-                        updateFrontier(data, maxUpdate / threadList.size);
+                    ExecutorService pool = workers;
+
+                    if(pool == null || threadList.size <= 1){
+                        //total update time no longer than maxUpdate
+                        for(Flowfield data : threadList){
+                            updateFrontier(data, maxUpdate / threadList.size);
+                        }
+                    }else{
+                        //fields are independent, so each one can be updated by a different worker; the wall time stays within maxUpdate
+                        long budget = Math.min(maxUpdate, maxUpdate * workerCount / threadList.size);
+
+                        workerTasks.clear();
+                        for(Flowfield data : threadList){
+                            workerTasks.add(Executors.callable(() -> updateFrontier(data, budget)));
+                        }
+
+                        List<Future<Object>> results;
+                        try{
+                            results = pool.invokeAll(workerTasks);
+                        }catch(InterruptedException e){
+                            //stop looping when interrupted externally
+                            return;
+                        }
+
+                        for(Future<Object> result : results){
+                            try{
+                                result.get();
+                            }catch(ExecutionException e){
+                                Log.err(e.getCause());
+                            }
+                        }
                     }
                 }
 
@@ -255,8 +328,9 @@ public class Pathfinder implements Runnable{
             }
         }
 
-        int[][] values = path.weights;
-        int value = values[tile.x][tile.y];
+        path.request(tile.x, tile.y);
+
+        int value = path.weight(tile.x, tile.y);
 
         Tile current = null;
         int tl = 0;
@@ -266,10 +340,11 @@ public class Pathfinder implements Runnable{
             Tile other = world.tile(dx, dy);
             if(other == null) continue;
 
-            if(values[dx][dy] < value && (current == null || values[dx][dy] < tl) && path.passable(dx, dy) &&
+            int weight = path.weight(dx, dy);
+            if(weight < value && (current == null || weight < tl) && path.passable(dx, dy) &&
             !(point.x != 0 && point.y != 0 && (!path.passable(tile.x + point.x, tile.y) || !path.passable(tile.x, tile.y + point.y)))){ //diagonal corner trap
                 current = other;
-                tl = values[dx][dy];
+                tl = weight;
             }
         }
 
@@ -283,9 +358,19 @@ public class Pathfinder implements Runnable{
      * This only occurs for active teams.
      */
     private void updateTargets(Flowfield path, int x, int y){
-        if(!Structs.inBounds(x, y, path.weights)) return;
+        if(path.clusters != null){
+            if(x >= 0 && y >= 0 && x < width && y < height){
+                path.clusters.tileChanged(x, y);
+                path.searchStartTime = Time.nanos();
+            }
+            return;
+        }
+
+        if(x < 0 || y < 0 || x >= path.width || y >= path.height) return;
+
+        int index = x + y * path.width;
 
-        if(path.weights[x][y] == 0){
+        if(path.weights[index] == 0){
             //this was a previous target
             path.frontier.clear();
         }else if(!path.frontier.isEmpty()){
@@ -294,7 +379,7 @@ public class Pathfinder implements Runnable{
         }
 
         //update cost of the tile TODO maybe only update the cost when it's not passable
-        path.weights[x][y] = path.cost.getCost(path.team, tiles[x][y]);
+        path.weights[index] = path.cost.getCost(path.team, tiles[index]);
 
         //clear frontier to prevent contamination
         path.frontier.clear();
@@ -307,16 +392,24 @@ public class Pathfinder implements Runnable{
 
         //increment search, but do not clear the frontier
         path.search++;
+        path.searchStartTime = Time.nanos();
+
+        if(path.clusters != null){
+            path.clusters.targetsChanged();
+            return;
+        }
 
         synchronized(path.targets){
             //add targets
             for(int i = 0; i < path.targets.size; i++){
                 int pos = path.targets.get(i);
                 int tx = Point2.x(pos), ty = Point2.y(pos);
+                if(tx < 0 || ty < 0 || tx >= path.width || ty >= path.height) continue;
 
-                path.weights[tx][ty] = 0;
-                path.searches[tx][ty] = path.search;
-                path.frontier.addFirst(pos);
+                int index = tx + ty * path.width;
+                path.weights[index] = 0;
+                path.searches[index] = path.search;
+                path.frontier.addFirst(index);
             }
         }
     }
@@ -334,57 +427,117 @@ public class Pathfinder implements Runnable{
      * Pathfinding thread only.
      */
     private void registerPath(Flowfield path){
-        path.lastUpdateTime = Time.millis();
-        path.setup(tiles.length, tiles[0].length);
+        initPath(path);
 
         threadList.add(path);
 
         //add to main thread's list of paths
         Core.app.post(() -> mainList.add(path));
+    }
 
-        //fill with impassables by default
-        for(int x = 0; x < world.width(); x++){
-            for(int y = 0; y < world.height(); y++){
-                path.weights[x][y] = impassable;
-            }
+    /** Allocates the weights of a path and adds its targets to the frontier. */
+    private void initPath(Flowfield path){
+        path.lastUpdateTime = Time.millis();
+        path.searchStartTime = Time.nanos();
+
+        //very large maps use clusters, which only store weights where units are
+        if(width * height >= hierarchicalArea){
+            path.clusters = new FlowClusters(path, width, height);
+            path.initialized = true;
+            return;
         }
 
+        path.setup(width, height);
+
+        //fill with impassables by default
+        Arrays.fill(path.weights, impassable);
+
         //add targets
         for(int i = 0; i < path.targets.size; i++){
             int pos = path.targets.get(i);
-            path.weights[Point2.x(pos)][Point2.y(pos)] = 0;
-            path.frontier.addFirst(pos);
+            int x = Point2.x(pos), y = Point2.y(pos);
+            if(x < 0 || y < 0 || x >= width || y >= height) continue;
+
+            //targets belong to the current search, so their neighbours never overwrite them
+            path.weights[x + y * width] = 0;
+            path.searches[x + y * width] = path.search;
+            path.frontier.addFirst(x + y * width);
         }
     }
 
-    /** Update the frontier for a path. Pathfinding thread only. */
+    /**
+     * Fully computes a flow field on the calling thread, without registering it for updates.
+     * Fields with clusters have the weights of every cluster computed.
+     * The field is not updated when tiles change afterwards. Meant for tests and benchmarks.
+     */
+    public Flowfield computeField(Flowfield path){
+        path.targets.clear();
+        path.getPositions(path.targets);
+        initPath(path);
+
+        if(path.clusters != null){
+            int half = FlowClusters.clusterSize / 2;
+            for(int y = 0; y < height; y += FlowClusters.clusterSize){
+                for(int x = 0; x < width; x += FlowClusters.clusterSize){
+                    path.request(Math.min(x + half, width - 1), Math.min(y + half, height - 1));
+                }
+            }
+        }
+
+        updateFrontier(path, -1);
+        return path;
+    }
+
+    /** Update the frontier for a path. Pathfinding thread or workers only; never called for the same path concurrently. */
     private void updateFrontier(Flowfield path, long nsToRun){
         long start = Time.nanos();
 
-        while(path.frontier.size > 0 && (nsToRun < 0 || Time.timeSinceNanos(start) <= nsToRun)){
-            Tile tile = world.tile(path.frontier.removeLast());
-            if(tile == null || path.weights == null) return; //something went horribly wrong, bail
-            int cost = path.weights[tile.x][tile.y];
+        boolean done;
+        if(path.clusters != null){
+            path.clusters.update(nsToRun);
+            done = path.clusters.converged();
+        }else{
+            updateFrontierSteps(path, nsToRun, start);
+            done = path.frontier.size == 0;
+        }
+
+        //record how long it took for the search to finish
+        if(done && path.searchStartTime != 0){
+            path.convergenceTime = Time.timeSinceNanos(path.searchStartTime) / 1000000f;
+            path.searchStartTime = 0;
+        }
+    }
+
+    private void updateFrontierSteps(Flowfield path, long nsToRun, long start){
+        int[] weights = path.weights, searches = path.searches, offsets = path.offsets;
+        int width = path.width, height = path.height, search = path.search;
+        IntQueue frontier = path.frontier;
+        if(weights == null) return;
+
+        while(frontier.size > 0 && (nsToRun < 0 || Time.timeSinceNanos(start) <= nsToRun)){
+            int index = frontier.removeLast();
+            int cost = weights[index];
 
             //pathfinding overflowed for some reason, time to bail. the next block update will handle this, hopefully
-            if(path.frontier.size >= world.width() * world.height()){
-                path.frontier.clear();
+            if(frontier.size >= weights.length){
+                frontier.clear();
                 return;
             }
 
             if(cost != impassable){
-                for(Point2 point : Geometry.d4){
+                int x = index % width, y = index / width;
 
-                    int dx = tile.x + point.x, dy = tile.y + point.y;
+                for(int i = 0; i < 4; i++){
+                    //skip neighbours outside the map; offsets are in Geometry.d4 order
+                    if((i == 0 && x == width - 1) || (i == 1 && y == height - 1) || (i == 2 && x == 0) || (i == 3 && y == 0)) continue;
 
-                    if(dx < 0 || dy < 0 || dx >= tiles.length || dy >= tiles[0].length) continue;
+                    int other = index + offsets[i];
+                    int otherCost = path.cost.getCost(path.team, tiles[other]);
 
-                    int otherCost = path.cost.getCost(path.team, tiles[dx][dy]);
-
-                    if((path.weights[dx][dy] > cost + otherCost || path.searches[dx][dy] < path.search) && otherCost != impassable){
-                        path.frontier.addFirst(Point2.pack(dx, dy));
-                        path.weights[dx][dy] = cost + otherCost;
-                        path.searches[dx][dy] = (short)path.search;
+                    if((weights[other] > cost + otherCost || searches[other] < search) && otherCost != impassable){
+                        frontier.addFirst(other);
+                        weights[other] = cost + otherCost;
+                        searches[other] = search;
                     }
                 }
             }
@@ -442,11 +595,17 @@ public class Pathfinder implements Runnable{
         /** Function for calculating path cost. Set before using. */
         protected PathCost cost = costTypes.get(costGround);
 
-        /** costs of getting to a specific tile */
-        public int[][] weights;
+        /** costs of getting to a specific tile, indexed by x + y * width; null when this field uses clusters */
+        public int[] weights;
+        /** cluster weights, used instead of the weight array on very large maps */
+        @Nullable FlowClusters clusters;
         /** search IDs of each position - the highest, most recent search is prioritized and overwritten */
-        public int[][] searches;
-        /** search frontier, these are Pos objects */
+        public int[] searches;
+        /** size of the weight arrays */
+        public int width, height;
+        /** index offsets of the neighbours of a tile, in {@link Geometry#d4} order */
+        int[] offsets = {};
+        /** search frontier, these are tile indices */
         IntQueue frontier = new IntQueue();
         /** all target positions; these positions have a cost of 0, and must be synchronized on! */
         final IntSeq targets = new IntSeq();
@@ -456,16 +615,45 @@ public class Pathfinder implements Runnable{
         long lastUpdateTime;
         /** whether this flow field is ready to be used */
         boolean initialized;
+        /** start of the current search in nanoseconds, or 0 if the search has finished */
+        volatile long searchStartTime;
+        /** time it took for the last search to finish, in milliseconds */
+        public volatile float convergenceTime;
 
         void setup(int width, int height){
-            this.weights = new int[width][height];
-            this.searches = new int[width][height];
+            this.width = width;
+            this.height = height;
+            this.weights = new int[width * height];
+            this.searches = new int[width * height];
+            this.offsets = new int[]{1, width, -1, -width};
             this.frontier.ensureCapacity((width + height) * 3);
             this.initialized = true;
         }
 
+        /** @return the cost of getting to a tile, or {@link FlowClusters#unknown} if it has not been computed. */
+        public int weight(int x, int y){
+            return clusters != null ? clusters.weight(x, y) : weights[x + y * width];
+        }
+
+        /** @return whether the weights of this field can be queried, either as an array or as clusters. */
+        public boolean hasWeights(){
+            return weights != null || clusters != null;
+        }
+
+        /** @return whether the weight of a tile has been computed. Tiles that are computed but can't reach any target have a weight of {@link FlowClusters#unknown}. */
+        public boolean hasWeight(int x, int y){
+            return clusters == null || clusters.loaded(x, y);
+        }
+
+        /** Requests the weights around a tile, so that they are computed soon. Only needed for fields with clusters. Main thread only. */
+        public void request(int x, int y){
+            if(clusters != null){
+                clusters.request(x, y);
+            }
+        }
+
         protected boolean passable(int x, int y){
-            return cost.getCost(team, pathfinder.tiles[x][y]) != impassable;
+            return cost.getCost(team, pathfinder.tiles[x + y * pathfinder.width]) != impassable;
         }
 
         /** Gets targets to pathfind towards. This must run on the main thread. */
@@ -1,24 +1,42 @@
 package mindustry.async;
 
 import arc.*;
+import arc.func.*;
 import arc.struct.*;
+import arc.util.*;
 import arc.util.async.*;
 import mindustry.game.EventType.*;
 
+import java.util.*;
 import java.util.concurrent.*;
 
 import static mindustry.Vars.*;
 
 public class AsyncCore{
+    /** Common resource names for {@link AsyncProcess#reads()} and {@link AsyncProcess#writes()}. Mods may use their own. */
+    public static final String
+        resourceUnits = "units",
+        resourceBullets = "bullets",
+        resourceBuildings = "buildings",
+        resourceTiles = "tiles",
+        resourcePower = "power";
+
     //all processes to be executed each frame
     public final Seq<AsyncProcess> processes = Seq.with(
         new PhysicsProcess()
     );
 
-    //futures to be awaited
-    private final Seq<Future<?>> futures = new Seq<>();
+    /** Processes grouped into phases; processes in the same phase run in parallel, and phases run in order. */
+    private final Seq<Seq<AsyncProcess>> phases = new Seq<>();
+    /** Process list that the phases were built for. */
+    private final Seq<AsyncProcess> scheduled = new Seq<>();
+    private final ObjectMap<AsyncProcess, Timing> timings = new ObjectMap<>();
+    /** Processes that should run this frame, decided on the main thread. */
+    private final ObjectSet<AsyncProcess> active = new ObjectSet<>();
 
-    private ExecutorService executor;
+    private @Nullable ForkJoinPool pool;
+    //the task running all phases, to be awaited
+    private @Nullable Future<?> task;
 
     public AsyncCore(){
         Events.on(WorldLoadEvent.class, e -> {
@@ -40,27 +58,35 @@ public class AsyncCore{
         if(state.isPlaying()){
             //sync begin
             for(AsyncProcess p : processes){
+                long start = Time.nanos();
                 p.begin();
+                timing(p).begin = Time.timeSinceNanos(start) / 1000000f;
             }
 
-            futures.clear();
+            //rebuild the schedule when processes were added or removed
+            if(!scheduled.equals(processes)){
+                schedule();
+            }
 
-            //init executor with size of potentially-modified process list
-            if(executor == null){
-                executor = Executors.newFixedThreadPool(processes.size, r -> {
-                    Thread thread = new Thread(r, "AsyncLogic-Thread");
+            if(pool == null){
+                pool = new ForkJoinPool(Math.max(OS.cores - 1, 1), p -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    thread.setName("AsyncLogic-Thread-" + thread.getPoolIndex());
                     thread.setDaemon(true);
-                    thread.setUncaughtExceptionHandler((t, e) -> Threads.throwAppException(e));
                     return thread;
-                });
+                }, (t, e) -> Threads.throwAppException(e), false);
             }
 
-            //submit all tasks
+            active.clear();
             for(AsyncProcess p : processes){
                 if(p.shouldProcess()){
-                    futures.add(executor.submit(p::process));
+                    active.add(p);
+                }else{
+                    timing(p).process = 0f;
                 }
             }
+
+            task = pool.submit(this::runPhases);
         }
     }
 
@@ -70,22 +96,174 @@ public class AsyncCore{
 
             //sync end (flush data)
             for(AsyncProcess p : processes){
+                long start = Time.nanos();
                 p.end();
+                timing(p).end = Time.timeSinceNanos(start) / 1000000f;
+            }
+        }
+    }
+
+    /**
+     * Runs a task split into chunks, in parallel, and waits for all chunks to finish.
+     * Meant to be called from {@link AsyncProcess#process()}; on any other thread, the chunks simply run in order.
+     */
+    public void fork(int chunks, Intc chunk){
+        if(chunks <= 1 || !ForkJoinTask.inForkJoinPool()){
+            for(int i = 0; i < chunks; i++){
+                chunk.get(i);
+            }
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask[chunks];
+        for(int i = 0; i < chunks; i++){
+            int index = i;
+            tasks[i] = ForkJoinTask.adapt(() -> chunk.get(index));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /** @return timing data of a process, which is updated every frame. */
+    public Timing timing(AsyncProcess process){
+        synchronized(timings){
+            Timing timing = timings.get(process);
+            if(timing == null){
+                timings.put(process, timing = new Timing());
+            }
+            return timing;
+        }
+    }
+
+    /** @return the processes of each phase, in execution order. Do not modify. */
+    public Seq<Seq<AsyncProcess>> phases(){
+        if(!scheduled.equals(processes)){
+            schedule();
+        }
+        return phases;
+    }
+
+    private void runPhases(){
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for(Seq<AsyncProcess> phase : phases){
+            tasks.clear();
+
+            for(AsyncProcess p : phase){
+                if(!active.contains(p)) continue;
+
+                Timing timing = timing(p);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    long start = Time.nanos();
+                    p.process();
+                    timing.process = Time.timeSinceNanos(start) / 1000000f;
+                }));
+            }
+
+            if(tasks.size() == 1){
+                tasks.get(0).invoke();
+            }else if(tasks.size() > 1){
+                ForkJoinTask.invokeAll(tasks);
             }
         }
     }
 
+    /**
+     * Groups processes into phases. A process runs after its dependencies, and after any earlier registered process it conflicts with.
+     * Dependencies on processes that are not registered are ignored.
+     */
+    private void schedule(){
+        scheduled.set(processes);
+        phases.clear();
+
+        int size = processes.size;
+        //edges[i] contains every process that must run after process i
+        IntSeq[] edges = new IntSeq[size];
+        int[] incoming = new int[size], level = new int[size];
+
+        for(int i = 0; i < size; i++){
+            edges[i] = new IntSeq();
+        }
+
+        for(int i = 0; i < size; i++){
+            AsyncProcess a = processes.get(i);
+            for(int j = 0; j < size; j++){
+                if(i == j) continue;
+                AsyncProcess b = processes.get(j);
+
+                //b depends on a, or they conflict and a was registered first without depending on b
+                if(contains(b.dependencies(), a.name()) || (i < j && conflicts(a, b) && !contains(a.dependencies(), b.name()))){
+                    edges[i].add(j);
+                    incoming[j]++;
+                }
+            }
+        }
+
+        IntQueue queue = new IntQueue();
+        for(int i = 0; i < size; i++){
+            if(incoming[i] == 0) queue.addLast(i);
+        }
+
+        int visited = 0;
+        while(queue.size > 0){
+            int i = queue.removeFirst();
+            visited++;
+
+            while(phases.size <= level[i]){
+                phases.add(new Seq<>());
+            }
+            phases.get(level[i]).add(processes.get(i));
+
+            for(int k = 0; k < edges[i].size; k++){
+                int j = edges[i].get(k);
+                level[j] = Math.max(level[j], level[i] + 1);
+                if(--incoming[j] == 0) queue.addLast(j);
+            }
+        }
+
+        if(visited != size){
+            scheduled.clear();
+            throw new IllegalStateException("Async processes have cyclic dependencies: " + processes.map(AsyncProcess::name));
+        }
+    }
+
+    private static boolean conflicts(AsyncProcess a, AsyncProcess b){
+        String[] wa = a.writes(), wb = b.writes();
+        for(String res : wa){
+            if(contains(wb, res) || contains(b.reads(), res)) return true;
+        }
+        for(String res : wb){
+            if(contains(a.reads(), res)) return true;
+        }
+        return false;
+    }
+
+    private static boolean contains(String[] arr, String value){
+        for(String s : arr){
+            if(s.equals(value)) return true;
+        }
+        return false;
+    }
+
     private void complete(){
-        //wait for all threads to stop processing
-        for(Future future : futures){
+        //wait for all phases to finish processing
+        if(task != null){
             try{
-                future.get();
+                task.get();
             }catch(Throwable t){
                 throw new RuntimeException(t);
+            }finally{
+                task = null;
             }
         }
+    }
+
+    /** Time spent in each phase of a process during the last frame, in milliseconds. */
+    public static class Timing{
+        public volatile float begin, process, end;
 
-        //clear processed futures
-        futures.clear();
+        @Override
+        public String toString(){
+            return Strings.fixed(begin, 2) + "ms / " + Strings.fixed(process, 2) + "ms / " + Strings.fixed(end, 2) + "ms";
+        }
     }
 }
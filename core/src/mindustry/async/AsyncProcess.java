@@ -1,6 +1,9 @@
 package mindustry.async;
 
+import static mindustry.Vars.*;
+
 public interface AsyncProcess{
+    String[] none = {};
 
     /** Sync. Called when the world loads. */
     default void init(){}
@@ -11,7 +14,11 @@ public interface AsyncProcess{
     /** Sync. Called at the beginning of the main loop. */
     default void begin(){}
 
-    /** Async. Called in a separate thread. */
+    /**
+     * Async. Called in a separate thread.
+     * Processes that touch independent data may run at the same time; see {@link #reads()} and {@link #writes()}.
+     * Work can be split further with {@link AsyncCore#fork}.
+     */
     default void process(){}
 
     /** Sync. Called in the end of the main loop. */
@@ -20,4 +27,29 @@ public interface AsyncProcess{
     default boolean shouldProcess(){
         return true;
     }
+
+    /** @return unique name of this process, used in {@link #dependencies()}. */
+    default String name(){
+        return getClass().getSimpleName();
+    }
+
+    /** @return names of the resources read during {@link #process()}, e.g. {@link AsyncCore#resourceUnits}. */
+    default String[] reads(){
+        return none;
+    }
+
+    /** @return names of the resources written during {@link #process()}. Processes that write the same resource, or read what another writes, never run concurrently. */
+    default String[] writes(){
+        return none;
+    }
+
+    /** @return names of the processes that must finish processing before this one starts. */
+    default String[] dependencies(){
+        return none;
+    }
+
+    /** @return time spent in each phase of this process during the last frame. */
+    default AsyncCore.Timing timing(){
+        return asyncCore.timing(this);
+    }
 }
@@ -0,0 +1,188 @@
+package mindustry.async;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import mindustry.*;
+import mindustry.async.PhysicsProcess.*;
+import mindustry.async.PhysicsProcess.PhysicsWorld.*;
+
+import java.util.*;
+
+/**
+ * Physics world that copies bodies into flat arrays every step, and sorts them into a grid with a counting sort.
+ * Collisions are resolved in parallel over bands of grid rows; see {@link AsyncCore#fork}.
+ * Every body only sums up the pushes it receives, from positions at the start of the step, and the sums are applied once all bands are done.
+ * The result does not depend on the amount of threads or the order they finish in.
+ */
+public class PackedPhysicsWorld implements PhysicsSolver{
+    //how much to soften movement by
+    private static final float scl = 1.25f;
+    private static final float cellSize = 64f;
+    /** Amount of grid rows resolved by one task. */
+    private static final int bandRows = 4;
+    /** Below this amount of bodies, forking costs more than it saves. */
+    private static final int parallelThreshold = 1000;
+
+    private final Seq<PhysicsBody> bodies = new Seq<>(false, 16, PhysicsBody.class);
+    private final float boundsX, boundsY;
+    private final int width, height, cellsPerLayer;
+
+    private float[] x = {}, y = {}, radius = {}, mass = {}, dx = {}, dy = {};
+    private int[] cell = {};
+    private boolean[] local = {};
+    /** Body indices, sorted by layer, then cell. */
+    private int[] sorted = {};
+    /** Index in {@link #sorted} where each cell starts; the cell ends where the next one starts. */
+    private final int[] cellStart, cellCursor;
+    /** Largest radius of all bodies in this step. */
+    private float maxRadius;
+
+    public PackedPhysicsWorld(Rect bounds){
+        boundsX = bounds.x;
+        boundsY = bounds.y;
+        width = Math.max((int)Math.ceil(bounds.width / cellSize), 1);
+        height = Math.max((int)Math.ceil(bounds.height / cellSize), 1);
+        cellsPerLayer = width * height;
+        cellStart = new int[cellsPerLayer * PhysicsProcess.layers + 1];
+        cellCursor = new int[cellStart.length];
+    }
+
+    @Override
+    public void add(PhysicsBody body){
+        bodies.add(body);
+    }
+
+    @Override
+    public void remove(PhysicsBody body){
+        bodies.remove(body, true);
+    }
+
+    @Override
+    public void update(){
+        int size = bodies.size;
+        if(x.length < size) resize(Math.max(size, x.length * 7 / 4));
+
+        gather();
+        sort();
+
+        int bands = (height + bandRows - 1) / bandRows;
+        if(size >= parallelThreshold && Vars.asyncCore != null){
+            Vars.asyncCore.fork(bands, this::resolve);
+        }else{
+            for(int i = 0; i < bands; i++){
+                resolve(i);
+            }
+        }
+
+        //merge the pushes, in body order
+        PhysicsBody[] items = bodies.items;
+        for(int i = 0; i < size; i++){
+            PhysicsBody body = items[i];
+            body.x = x[i] + dx[i];
+            body.y = y[i] + dy[i];
+        }
+    }
+
+    private void gather(){
+        PhysicsBody[] items = bodies.items;
+        maxRadius = 0f;
+
+        for(int i = 0; i < bodies.size; i++){
+            PhysicsBody body = items[i];
+            x[i] = body.x;
+            y[i] = body.y;
+            radius[i] = body.radius;
+            mass[i] = body.mass;
+            local[i] = body.local;
+            cell[i] = body.layer * cellsPerLayer + cellX(body.x) + cellY(body.y) * width;
+            maxRadius = Math.max(maxRadius, body.radius);
+        }
+    }
+
+    /** Counting sort by cell. The sort is stable, so bodies in a cell stay in the order they were added in. */
+    private void sort(){
+        int size = bodies.size;
+        Arrays.fill(cellStart, 0);
+
+        for(int i = 0; i < size; i++){
+            cellStart[cell[i] + 1]++;
+        }
+        for(int i = 1; i < cellStart.length; i++){
+            cellStart[i] += cellStart[i - 1];
+        }
+
+        System.arraycopy(cellStart, 0, cellCursor, 0, cellStart.length);
+        for(int i = 0; i < size; i++){
+            sorted[cellCursor[cell[i]]++] = i;
+        }
+    }
+
+    /** Sums up the pushes of every body in a band of rows. Only writes to bodies of the band, so bands can run at the same time. */
+    private void resolve(int band){
+        int minRow = band * bandRows, maxRow = Math.min(minRow + bandRows, height);
+
+        for(int l = 0; l < PhysicsProcess.layers; l++){
+            int offset = l * cellsPerLayer;
+
+            for(int c = offset + minRow * width; c < offset + maxRow * width; c++){
+                for(int s = cellStart[c]; s < cellStart[c + 1]; s++){
+                    resolve(sorted[s], offset);
+                }
+            }
+        }
+    }
+
+    private void resolve(int i, int offset){
+        float sumx = 0f, sumy = 0f;
+
+        //for clients, the only body that collides is the local one; all other physics simulations are handled by the server.
+        if(local[i]){
+            float bx = x[i], by = y[i], br = radius[i], bm = mass[i];
+            float range = br + maxRadius;
+            int minx = cellX(bx - range), maxx = cellX(bx + range), miny = cellY(by - range), maxy = cellY(by + range);
+
+            for(int cy = miny; cy <= maxy; cy++){
+                int row = offset + cy * width;
+                for(int s = cellStart[row + minx], end = cellStart[row + maxx + 1]; s < end; s++){
+                    int j = sorted[s];
+                    if(j == i) continue;
+
+                    float vx = bx - x[j], vy = by - y[j];
+                    float rs = br + radius[j];
+                    float dst = Mathf.sqrt(vx * vx + vy * vy);
+
+                    if(dst < rs && dst > 0f){
+                        //push away by this body's share of the overlap
+                        float push = (rs - dst) / dst * mass[j] / (bm + mass[j]) / scl;
+                        sumx += vx * push;
+                        sumy += vy * push;
+                    }
+                }
+            }
+        }
+
+        dx[i] = sumx;
+        dy[i] = sumy;
+    }
+
+    private void resize(int size){
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        radius = Arrays.copyOf(radius, size);
+        mass = Arrays.copyOf(mass, size);
+        dx = Arrays.copyOf(dx, size);
+        dy = Arrays.copyOf(dy, size);
+        cell = Arrays.copyOf(cell, size);
+        local = Arrays.copyOf(local, size);
+        sorted = Arrays.copyOf(sorted, size);
+    }
+
+    private int cellX(float wx){
+        return Mathf.clamp((int)((wx - boundsX) / cellSize), 0, width - 1);
+    }
+
+    private int cellY(float wy){
+        return Mathf.clamp((int)((wy - boundsY) / cellSize), 0, height - 1);
+    }
+}
@@ -10,17 +10,28 @@ import mindustry.entities.*;
 import mindustry.gen.*;
 
 public class PhysicsProcess implements AsyncProcess{
-    private static final int
+    static final int
         layers = 3,
         layerGround = 0,
         layerLegs = 1,
         layerFlying = 2;
 
-    private PhysicsWorld physics;
+    //processing only touches the bodies of the physics world; units are read and written synchronously
+    private static final String[] writes = {"physics"};
+
+    /** Whether to use {@link PackedPhysicsWorld} instead of {@link PhysicsWorld}. Applied when the world loads. */
+    public static boolean packed = true;
+
+    private PhysicsSolver physics;
     private Seq<PhysicRef> refs = new Seq<>(false);
     //currently only enabled for units
     private EntityGroup<Unit> group = Groups.unit;
 
+    @Override
+    public String[] writes(){
+        return writes;
+    }
+
     @Override
     public void begin(){
         if(physics == null) return;
@@ -106,7 +117,18 @@ public class PhysicsProcess implements AsyncProcess{
     public void init(){
         reset();
 
-        physics = new PhysicsWorld(Vars.world.getQuadBounds(new Rect()));
+        Rect bounds = Vars.world.getQuadBounds(new Rect());
+        physics = packed ? new PackedPhysicsWorld(bounds) : new PhysicsWorld(bounds);
+    }
+
+    /** Moves bodies apart. Bodies are added and removed on the main thread, and only updated in {@link #process()}. */
+    public interface PhysicsSolver{
+        void add(PhysicsBody body);
+
+        void remove(PhysicsBody body);
+
+        /** Pushes overlapping bodies apart, once. Only bodies that are {@link PhysicsBody#local} move. */
+        void update();
     }
 
     public static class PhysicRef{
@@ -121,11 +143,11 @@ public class PhysicsProcess implements AsyncProcess{
     }
 
     //world for simulating physics in a different thread
-    public static class PhysicsWorld{
+    public static class PhysicsWorld implements PhysicsSolver{
         //how much to soften movement by
         private static final float scl = 1.25f;
 
-        private final QuadTree<PhysicsBody>[] trees = new QuadTree[layers];
+        private final SpatialGrid<PhysicsBody>[] trees = new SpatialGrid[layers];
         private final Seq<PhysicsBody> bodies = new Seq<>(false, 16, PhysicsBody.class);
         private final Seq<PhysicsBody> seq = new Seq<>(PhysicsBody.class);
         private final Rect rect = new Rect();
@@ -133,27 +155,44 @@ public class PhysicsProcess implements AsyncProcess{
 
         public PhysicsWorld(Rect bounds){
             for(int i = 0; i < layers; i++){
-                trees[i] = new QuadTree<>(new Rect(bounds));
+                trees[i] = new SpatialGrid<>(bounds);
             }
         }
 
+        @Override
         public void add(PhysicsBody body){
             bodies.add(body);
         }
 
+        @Override
         public void remove(PhysicsBody body){
             bodies.remove(body);
+            if(body.treeLayer != -1){
+                trees[body.treeLayer].remove(body);
+                body.treeLayer = -1;
+            }
         }
 
+        @Override
         public void update(){
             for(int i = 0; i < layers; i++){
-                trees[i].clear();
+                trees[i].beginUpdate();
             }
 
             for(int i = 0; i < bodies.size; i++){
                 PhysicsBody body = bodies.items[i];
                 body.collided = false;
-                trees[body.layer].insert(body);
+
+                //bodies can switch layers, e.g. when landing
+                if(body.treeLayer != body.layer){
+                    if(body.treeLayer != -1) trees[body.treeLayer].remove(body);
+                    body.treeLayer = body.layer;
+                }
+                trees[body.layer].update(body);
+            }
+
+            for(int i = 0; i < layers; i++){
+                trees[i].endUpdate();
             }
 
             for(int i = 0; i < bodies.size; i++){
@@ -198,6 +237,8 @@ public class PhysicsProcess implements AsyncProcess{
             public float x, y, radius, mass;
             public int layer = 0;
             public boolean collided = false, local = true;
+            /** layer of the grid this body is stored in, or -1 */
+            int treeLayer = -1;
 
             @Override
             public void hitbox(Rect out){
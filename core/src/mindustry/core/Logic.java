@@ -6,6 +6,7 @@ import arc.util.*;
 import mindustry.annotations.Annotations.*;
 import mindustry.core.GameState.*;
 import mindustry.ctype.*;
+import mindustry.entities.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.game.Teams.*;
@@ -14,6 +15,8 @@ import mindustry.maps.*;
 import mindustry.type.*;
 import mindustry.type.Weather.*;
 import mindustry.world.*;
+import mindustry.world.blocks.logic.*;
+import mindustry.world.blocks.power.*;
 import mindustry.world.blocks.storage.CoreBlock.*;
 
 import java.util.*;
@@ -96,6 +99,9 @@ public class Logic implements ApplicationListener{
         });
 
         Events.on(WorldLoadEvent.class, e -> {
+            SleepScheduler.clear();
+            Explosions.clear();
+
             //enable infinite ammo for wave team by default
             state.rules.waveTeam.rules().infiniteAmmo = true;
 
@@ -410,6 +416,17 @@ public class Logic implements ApplicationListener{
                 state.envAttrs.add(state.rules.attributes);
                 Groups.weather.each(w -> state.envAttrs.add(w.weather.attrs, w.opacity));
 
+                if(!state.isEditor()){
+                    //deal the tile damage of last tick's explosions
+                    Explosions.update();
+                    //wake up buildings whose sleep timer ran out
+                    SleepScheduler.update();
+                    //solve all power graphs together, before any building uses its power status
+                    PowerGraph.updateAll();
+                    //run the parts of processor code that only affect the processor itself, in parallel
+                    LogicBlock.runParallel();
+                }
+
                 Groups.update();
             }
 
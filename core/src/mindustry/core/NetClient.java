@@ -28,7 +28,6 @@ import mindustry.world.modules.*;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.*;
 
 import static mindustry.Vars.*;
 
@@ -52,9 +51,16 @@ public class NetClient implements ApplicationListener{
 
     /** List of entities that were removed, and need not be added while syncing. */
     private IntSet removed = new IntSet();
+    /** Snapshot number of the last hidden snapshot of each hidden entity. Entity snapshots up to that number arrived late, and must not re-create it. */
+    private IntIntMap hidden = new IntIntMap();
     /** Byte stream for reading in snapshots. */
     private ReusableByteInStream byteStream = new ReusableByteInStream();
     private DataInputStream dataStream = new DataInputStream(byteStream);
+    /** Stream for reading entity states rebuilt from delta snapshots. */
+    private ReusableByteInStream stateStream = new ReusableByteInStream();
+    private Reads stateReads = new Reads(new DataInputStream(stateStream));
+    /** Entity states received from the server, used to decode delta snapshots. */
+    private SnapshotBaselines baselines = new SnapshotBaselines();
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons<String>>> customPacketHandlers = new ObjectMap<>();
 
@@ -133,7 +139,7 @@ public class NetClient implements ApplicationListener{
 
         net.handleClient(WorldStream.class, data -> {
             Log.info("Received world data: @ bytes.", data.stream.available());
-            NetworkIO.loadWorld(new InflaterInputStream(data.stream));
+            NetworkIO.loadWorld(data.stream);
 
             finishConnecting();
         });
@@ -331,6 +337,8 @@ public class NetClient implements ApplicationListener{
     public static void worldDataBegin(){
         Groups.clear();
         netClient.removed.clear();
+        netClient.hidden.clear();
+        netClient.baselines.reset();
         logic.reset();
         netClient.connecting = true;
 
@@ -360,14 +368,28 @@ public class NetClient implements ApplicationListener{
     }
 
     @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
-    public static void entitySnapshot(short amount, byte[] data){
+    public static void entitySnapshot(short amount, int sequence, int snapshot, byte[] data){
         try{
             netClient.byteStream.setBytes(data);
             DataInputStream input = netClient.dataStream;
+            boolean complete = true;
 
             for(int j = 0; j < amount; j++){
                 int id = input.readInt();
                 byte typeID = input.readByte();
+                Reads read = Reads.get(input);
+
+                //delta-encoded snapshot, rebuild the full state from the stored baseline
+                if(sequence >= 0){
+                    byte[] state = netClient.baselines.read(input, id, sequence);
+                    if(state == null){
+                        complete = false;
+                        continue;
+                    }
+
+                    netClient.stateStream.setBytes(state);
+                    read = netClient.stateReads;
+                }
 
                 Syncc entity = Groups.sync.getByID(id);
                 boolean add = false, created = false;
@@ -381,6 +403,14 @@ public class NetClient implements ApplicationListener{
                 if(entity == null){
                     entity = (Syncc)EntityMapping.map(typeID).get();
                     entity.id(id);
+
+                    //snapshots are unreliable and hidden snapshots are not, so a snapshot from before the entity was hidden can arrive after it
+                    if(snapshot >= 0 && snapshot <= netClient.hidden.get(id, -1)){
+                        entity.readSync(read);
+                        continue;
+                    }
+                    netClient.hidden.remove(id);
+
                     if(!netClient.isEntityUsed(entity.id())){
                         add = true;
                     }
@@ -388,7 +418,7 @@ public class NetClient implements ApplicationListener{
                 }
 
                 //read the entity
-                entity.readSync(Reads.get(input));
+                entity.readSync(read);
 
                 if(created){
                     //snap initial starting position
@@ -400,11 +430,34 @@ public class NetClient implements ApplicationListener{
                     netClient.addRemovedEntity(entity.id());
                 }
             }
+
+            //only acknowledge snapshots that can be used as baselines for every entity in them
+            if(sequence >= 0 && complete){
+                netClient.baselines.received(sequence);
+            }
         }catch(IOException e){
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Removes entities that left this client's area of interest. They are re-created by the next entity snapshot they appear in,
+     * as long as it was sent after the given snapshot number.
+     */
+    @Remote(variants = Variant.one, priority = PacketPriority.low)
+    public static void hiddenSnapshot(int snapshot, int[] ids){
+        for(int id : ids){
+            netClient.hidden.put(id, snapshot);
+
+            Syncc entity = Groups.sync.getByID(id);
+            if(entity == null || entity == player || entity == player.unit()) continue;
+
+            entity.remove();
+            //entity still exists on the server, so it must not be marked as removed
+            netClient.clearRemovedEntity(id);
+        }
+    }
+
     @Remote(variants = Variant.both, priority = PacketPriority.low, unreliable = true)
     public static void blockSnapshot(short amount, byte[] data){
         try{
@@ -519,6 +572,8 @@ public class NetClient implements ApplicationListener{
     private void reset(){
         net.setClientLoaded(false);
         removed.clear();
+        hidden.clear();
+        baselines.reset();
         timeoutTime = 0f;
         connecting = true;
         quietReset = false;
@@ -611,7 +666,8 @@ public class NetClient implements ApplicationListener{
             player.boosting, player.shooting, ui.chatfrag.shown(), control.input.isBuilding,
             requests,
             Core.camera.position.x, Core.camera.position.y,
-            Core.camera.width, Core.camera.height
+            Core.camera.width, Core.camera.height,
+            baselines.lastReceived(), baselines.receivedMask()
             );
         }
 
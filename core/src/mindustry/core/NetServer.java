@@ -6,6 +6,7 @@ import arc.graphics.*;
 import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
+import arc.struct.IntSet.*;
 import arc.util.*;
 import arc.util.CommandHandler.*;
 import arc.util.io.*;
@@ -23,6 +24,7 @@ import mindustry.logic.*;
 import mindustry.net.*;
 import mindustry.net.Administration.*;
 import mindustry.net.Packets.*;
+import mindustry.net.Streamable.*;
 import mindustry.world.*;
 
 import java.io.*;
@@ -37,6 +39,10 @@ public class NetServer implements ApplicationListener{
     /** note that snapshots are compressed, so the max snapshot size here is above the typical UDP safe limit */
     private static final int maxSnapshotSize = 800, timerBlockSync = 0, serverSyncTime = 200;
     private static final float blockSyncTime = 60 * 6;
+    /** Amount of block snapshot intervals it takes to refresh every building, dirty or not. */
+    private static final int blockRefreshSlices = 4;
+    /** Amount of block snapshots in a row a changed building is sent in. */
+    private static final int blockSnapshotRepeats = 3;
     private static final FloatBuffer fbuffer = FloatBuffer.allocate(20);
     private static final Writes dataWrites = new Writes(null);
     private static final Vec2 vector = new Vec2();
@@ -45,6 +51,8 @@ public class NetServer implements ApplicationListener{
 
     public final Administration admins = new Administration();
     public final CommandHandler clientCommands = new CommandHandler("/");
+    /** Compressed world data shared by players that join at about the same time. */
+    public final WorldDataCache worldCache = new WorldDataCache();
     public TeamAssigner assigner = (player, players) -> {
         if(state.rules.pvp){
             //find team with minimum amount of players and auto-assign player to that.
@@ -103,8 +111,37 @@ public class NetServer implements ApplicationListener{
     private ReusableByteOutStream syncStream = new ReusableByteOutStream();
     /** Data stream for writing player sync data to. */
     private DataOutputStream dataStream = new DataOutputStream(syncStream);
+    /** Stream for writing single entity states to, when delta snapshots are enabled. */
+    private ReusableByteOutStream stateStream = new ReusableByteOutStream();
+    /** Data stream for writing single entity states to. */
+    private DataOutputStream stateDataStream = new DataOutputStream(stateStream);
+    /** Sync states of entities written in the current frame. */
+    private IntMap<byte[]> entityStates = new IntMap<>();
+    /** Serialized entity snapshot packets of the current frame, shared by all connections without per-connection filtering. */
+    private Seq<ByteBuffer> sharedSnapshots = new Seq<>();
+    private long entityStateFrame = -1, sharedSnapshotFrame = -1;
+    private ByteBuffer snapshotBuffer = ByteBuffer.allocate(8192);
+    private ArcNetProvider.PacketSerializer snapshotSerializer = new ArcNetProvider.PacketSerializer();
+    /** Last time entity snapshots were sent. */
+    private long lastSnapshotTime;
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons2<Player, String>>> customPacketHandlers = new ObjectMap<>();
+    /** Entities inside the area of interest of the player currently being synced. */
+    private Seq<Syncc> interestEntities = new Seq<>(Syncc.class);
+    /** IDs of entities that left the area of interest of the player currently being synced. */
+    private IntSeq hiddenEntities = new IntSeq();
+    /** Area of interest bounds of the player currently being synced. */
+    private Rect interestRect = new Rect();
+    /** Bytes saved by area of interest filtering in the current tick. */
+    private int interestBytesCounter;
+    /** Estimated amount of entity snapshot bytes that were not sent due to area of interest filtering, in the last tick. */
+    public int interestBytesSaved;
+    /** Amount of bytes sent in the last block snapshot interval. */
+    public int blockSnapshotBytes;
+    /** Fraction of synced buildings that were sent in the last block snapshot interval. */
+    public float blockSnapshotRatio;
+    /** Slice of buildings that is refreshed regardless of dirty state in the current block snapshot interval. */
+    private int blockRefreshOffset;
 
     public NetServer(){
 
@@ -528,11 +565,18 @@ public class NetServer implements ApplicationListener{
     }
 
     public void sendWorldData(Player player){
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        DeflaterOutputStream def = new FastDeflaterOutputStream(stream);
-        NetworkIO.writeWorld(player, def);
+        //the client clears all entities when it receives the world, so old baselines are not valid anymore
+        player.con.baselines.reset();
+
+        ReusableByteOutStream stream = new ReusableByteOutStream();
+        try{
+            worldCache.write(player, stream);
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
         WorldStream data = new WorldStream();
-        data.stream = new ByteArrayInputStream(stream.toByteArray());
+        //sent straight from the written array; see ArcNetProvider.StreamSender
+        data.stream = new StreamBytes(stream.getBytes(), 0, stream.size());
         player.con.sendStream(data);
 
         debug("Packed @ bytes of world data.", stream.size());
@@ -631,11 +675,14 @@ public class NetServer implements ApplicationListener{
         Tile mining,
         boolean boosting, boolean shooting, boolean chatting, boolean building,
         @Nullable BuildPlan[] requests,
-        float viewX, float viewY, float viewWidth, float viewHeight
+        float viewX, float viewY, float viewWidth, float viewHeight,
+        int snapshotAck, int snapshotAckMask
     ){
         NetConnection con = player.con;
         if(con == null || snapshotID < con.lastReceivedClientSnapshot) return;
 
+        con.baselines.acknowledge(snapshotAck, snapshotAckMask);
+
         //validate coordinates just in case
         if(invalid(x)) x = 0f;
         if(invalid(y)) y = 0f;
@@ -888,14 +935,25 @@ public class NetServer implements ApplicationListener{
         }
     }
 
-    /** Sends a block snapshot to all players. */
+    /**
+     * Sends a block snapshot to all players.
+     * Only buildings whose items, liquids, power or configuration changed in the last few intervals are sent; every interval, a slice of the remaining buildings is refreshed as well.
+     */
     public void writeBlockSnapshots() throws IOException{
         syncStream.reset();
 
         short sent = 0;
+        int total = 0, written = 0, bytes = 0;
+        blockRefreshOffset = (blockRefreshOffset + 1) % blockRefreshSlices;
+
         for(Building entity : Groups.build){
             if(!entity.block.sync) continue;
+            total++;
+
+            //the dirty state must always be checked, so that it gets reset
+            if(!entity.checkSyncDirty(blockSnapshotRepeats) && entity.id % blockRefreshSlices != blockRefreshOffset) continue;
             sent++;
+            written++;
 
             dataStream.writeInt(entity.pos());
             dataStream.writeShort(entity.block.id);
@@ -903,6 +961,7 @@ public class NetServer implements ApplicationListener{
 
             if(syncStream.size() > maxSnapshotSize){
                 dataStream.close();
+                bytes += syncStream.size();
                 Call.blockSnapshot(sent, syncStream.toByteArray());
                 sent = 0;
                 syncStream.reset();
@@ -911,8 +970,12 @@ public class NetServer implements ApplicationListener{
 
         if(sent > 0){
             dataStream.close();
+            bytes += syncStream.size();
             Call.blockSnapshot(sent, syncStream.toByteArray());
         }
+
+        blockSnapshotBytes = bytes;
+        blockSnapshotRatio = total == 0 ? 0f : (float)written / total;
     }
 
     public void writeEntitySnapshot(Player player) throws IOException{
@@ -939,33 +1002,208 @@ public class NetServer implements ApplicationListener{
 
         syncStream.reset();
 
-        int sent = 0;
+        float radius = Config.interestRadius.num() * tilesize;
+        boolean delta = Config.deltaSnapshots.bool();
 
-        for(Syncc entity : Groups.sync){
+        //entity data is the same for every connection, so it is serialized and compressed once per frame
+        if(radius <= 0 && !delta){
+            if(sharedSnapshotFrame != Core.graphics.getFrameId()){
+                buildSharedSnapshots();
+            }
+
+            for(ByteBuffer buffer : sharedSnapshots){
+                player.con.send(buffer.asReadOnlyBuffer(), false);
+            }
+
+            player.con.snapshotsSent++;
+            return;
+        }
+
+        Iterable<Syncc> entities = radius > 0 ? collectInterest(player, radius) : Groups.sync;
+
+        SnapshotBaselines baselines = player.con.baselines;
+        //a negative sequence tells the client that entities are written in full, without baselines
+        int sequence = delta ? baselines.nextSequence() : -1;
+        int sent = 0, total = 0, bytes = 0;
+
+        for(Syncc entity : entities){
             //write all entities now
             dataStream.writeInt(entity.id()); //write id
             dataStream.writeByte(entity.classId()); //write type ID
-            entity.writeSync(Writes.get(dataStream)); //write entity
+            if(delta){
+                baselines.write(dataStream, entity.id(), entityState(entity)); //write entity, relative to the last acknowledged state
+            }else{
+                dataStream.write(entityState(entity)); //write entity
+            }
 
             sent++;
+            total++;
 
             if(syncStream.size() > maxSnapshotSize){
                 dataStream.close();
-                Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+                bytes += syncStream.size();
+                Call.entitySnapshot(player.con, (short)sent, sequence, player.con.snapshotsSent, syncStream.toByteArray());
                 sent = 0;
                 syncStream.reset();
+                if(delta) sequence = baselines.nextSequence();
             }
         }
 
         if(sent > 0){
             dataStream.close();
+            bytes += syncStream.size();
+
+            Call.entitySnapshot(player.con, (short)sent, sequence, player.con.snapshotsSent, syncStream.toByteArray());
+        }
+
+        if(radius > 0){
+            //estimate the savings based on the average size of the entities that were actually written
+            if(total > 0){
+                interestBytesCounter += (Groups.sync.size() - total) * bytes / total;
+            }
 
-            Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+            if(hiddenEntities.size > 0){
+                Call.hiddenSnapshot(player.con, player.con.snapshotsSent, hiddenEntities.toArray());
+            }
         }
 
         player.con.snapshotsSent++;
     }
 
+    /** Serializes the entity snapshot packets that are sent to every connection, when no per-connection filtering is done. */
+    private void buildSharedSnapshots() throws IOException{
+        sharedSnapshotFrame = Core.graphics.getFrameId();
+        sharedSnapshots.clear();
+        syncStream.reset();
+
+        int sent = 0;
+
+        for(Syncc entity : Groups.sync){
+            dataStream.writeInt(entity.id());
+            dataStream.writeByte(entity.classId());
+            dataStream.write(entityState(entity));
+
+            sent++;
+
+            if(syncStream.size() > maxSnapshotSize){
+                dataStream.close();
+                sharedSnapshots.add(serializeSnapshot(sent, syncStream.toByteArray()));
+                sent = 0;
+                syncStream.reset();
+            }
+        }
+
+        if(sent > 0){
+            dataStream.close();
+            sharedSnapshots.add(serializeSnapshot(sent, syncStream.toByteArray()));
+        }
+    }
+
+    /** @return an entity snapshot packet, serialized and compressed into a read-only buffer. */
+    private ByteBuffer serializeSnapshot(int amount, byte[] data){
+        EntitySnapshotCallPacket packet = new EntitySnapshotCallPacket();
+        packet.amount = (short)amount;
+        packet.sequence = -1;
+        //no entities are hidden without an area of interest, so shared snapshots are never stale
+        packet.snapshot = -1;
+        packet.data = data;
+
+        snapshotBuffer.clear();
+        snapshotSerializer.write(snapshotBuffer, packet);
+        snapshotBuffer.flip();
+
+        ByteBuffer result = ByteBuffer.allocate(snapshotBuffer.remaining());
+        result.put(snapshotBuffer);
+        result.flip();
+        return result.asReadOnlyBuffer();
+    }
+
+    /** @return the sync state of an entity. States are only written once per frame, and shared between all connections. */
+    private byte[] entityState(Syncc entity) throws IOException{
+        if(entityStateFrame != Core.graphics.getFrameId()){
+            entityStateFrame = Core.graphics.getFrameId();
+            entityStates.clear();
+        }
+
+        byte[] state = entityStates.get(entity.id());
+        if(state == null){
+            stateStream.reset();
+            entity.writeSync(Writes.get(stateDataStream));
+            stateDataStream.flush();
+            entityStates.put(entity.id(), state = stateStream.toByteArray());
+        }
+        return state;
+    }
+
+    /**
+     * Collects all synced entities inside the area of interest of a player, and records which previously synced entities have left it.
+     * Players, their units and important units of the player's own team are always included.
+     */
+    private Seq<Syncc> collectInterest(Player player, float radius){
+        NetConnection con = player.con;
+        IntSet last = con.syncedEntities, current = con.lastSyncedEntities;
+
+        interestEntities.clear();
+        hiddenEntities.clear();
+        current.clear();
+
+        //view size is unknown until the first client snapshot arrives
+        float viewWidth = Math.max(con.viewWidth, 0f), viewHeight = Math.max(con.viewHeight, 0f);
+        float cx = con.viewWidth > 0f ? con.viewX : player.x, cy = con.viewHeight > 0f ? con.viewY : player.y;
+        interestRect.setCentered(cx, cy, viewWidth + radius * 2f, viewHeight + radius * 2f);
+
+        for(Player other : Groups.player){
+            addInterest(current, other);
+            //player sync data references the unit, so it must always be present
+            if(other.unit().isAdded()){
+                addInterest(current, other.unit());
+            }
+        }
+
+        Groups.unit.intersect(interestRect.x, interestRect.y, interestRect.width, interestRect.height, unit -> addInterest(current, unit));
+
+        for(Unit unit : player.team().data().units){
+            if(unit.isBoss() || unit.spawnedByCore){
+                addInterest(current, unit);
+            }
+        }
+
+        for(Firec fire : Groups.fire){
+            if(interestRect.contains(fire.x(), fire.y())){
+                addInterest(current, fire);
+            }
+        }
+
+        //weather and labels are few in number and global, always sync them
+        for(WeatherStatec weather : Groups.weather){
+            addInterest(current, weather);
+        }
+
+        for(WorldLabelc label : Groups.label){
+            addInterest(current, label);
+        }
+
+        //entities that are still alive, but not in range anymore, get despawned on the client
+        IntSetIterator it = last.iterator();
+        while(it.hasNext){
+            int id = it.next();
+            if(!current.contains(id) && Groups.sync.getByID(id) != null){
+                hiddenEntities.add(id);
+            }
+        }
+
+        con.syncedEntities = current;
+        con.lastSyncedEntities = last;
+
+        return interestEntities;
+    }
+
+    private void addInterest(IntSet set, Syncc entity){
+        if(set.add(entity.id())){
+            interestEntities.add(entity);
+        }
+    }
+
     String fixName(String name){
         name = name.trim().replace("\n", "").replace("\t", "");
         if(name.equals("[") || name.equals("]")){
@@ -1016,7 +1254,16 @@ public class NetServer implements ApplicationListener{
     }
 
     void sync(){
+        interestBytesSaved = interestBytesCounter;
+        interestBytesCounter = 0;
+
         try{
+            //all connections are synced in the same frame, so that entity data can be shared between them
+            boolean syncEntities = Time.timeSinceMillis(lastSnapshotTime) >= serverSyncTime;
+            if(syncEntities){
+                lastSnapshotTime = Time.millis();
+            }
+
             Groups.player.each(p -> !p.isLocal(), player -> {
                 if(player.con == null || !player.con.isConnected()){
                     onDisconnect(player, "disappeared");
@@ -1025,7 +1272,7 @@ public class NetServer implements ApplicationListener{
 
                 var connection = player.con;
 
-                if(Time.timeSinceMillis(connection.syncTime) < serverSyncTime || !connection.hasConnected) return;
+                if(!syncEntities || !connection.hasConnected) return;
 
                 connection.syncTime = Time.millis();
 
@@ -31,6 +31,8 @@ public class World{
     public final Context context = new Context();
 
     public Tiles tiles = new Tiles(0, 0);
+    /** Packed collision flags of every tile. */
+    public final CollisionGrid collisions = new CollisionGrid();
 
     private boolean generating, invalidMap;
     private ObjectMap<Map, Runnable> customMapLoaders = new ObjectMap<>();
@@ -49,9 +51,7 @@ public class World{
     }
 
     public boolean solid(int x, int y){
-        Tile tile = tile(x, y);
-
-        return tile == null || tile.solid();
+        return collisions.solid(x, y);
     }
 
     public boolean passable(int x, int y){
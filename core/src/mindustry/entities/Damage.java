@@ -27,7 +27,6 @@ public class Damage{
     private static IntSet collidedBlocks = new IntSet();
     private static Building tmpBuilding;
     private static Unit tmpUnit;
-    private static IntFloatMap damages = new IntFloatMap();
 
     /** Creates a dynamic explosion based on specified parameters. */
     public static void dynamicExplosion(float x, float y, float flammability, float explosiveness, float power, float radius, boolean damage){
@@ -387,77 +386,9 @@ public class Damage{
         }
     }
 
+    /** Damages buildings with rays cast from the center of an explosion. Processed in a batch at the start of the next tick; see {@link Explosions}. */
     public static void tileDamage(Team team, int x, int y, float baseRadius, float damage){
-
-        Core.app.post(() -> {
-
-            var in = world.build(x, y);
-            //spawned inside a multiblock. this means that damage needs to be dealt directly.
-            //why? because otherwise the building would absorb everything in one cell, which means much less damage than a nearby explosion.
-            //this needs to be compensated
-            if(in != null && in.team != team && in.block.size > 1 && in.health > damage){
-                //deal the damage of an entire side, to be equivalent with maximum 'standard' damage
-                in.damage(team, damage * Math.min((in.block.size), baseRadius * 0.4f));
-                //no need to continue with the explosion
-                return;
-            }
-
-            //cap radius to prevent lag
-            float radius = Math.min(baseRadius, 30), rad2 = radius * radius;
-            int rays = Mathf.ceil(radius * 2 * Mathf.pi);
-            double spacing = Math.PI * 2.0 / rays;
-            damages.clear();
-
-            //raycast from each angle
-            for(int i = 0; i <= rays; i++){
-                float dealt = 0f;
-                int startX = x;
-                int startY = y;
-                int endX = x + (int)(Math.cos(spacing * i) * radius), endY = y + (int)(Math.sin(spacing * i) * radius);
-
-                int xDist = Math.abs(endX - startX);
-                int yDist = -Math.abs(endY - startY);
-                int xStep = (startX < endX ? +1 : -1);
-                int yStep = (startY < endY ? +1 : -1);
-                int error = xDist + yDist;
-
-                while(startX != endX || startY != endY){
-                    var build = world.build(startX, startY);
-                    if(build != null && build.team != team){
-                        //damage dealt at circle edge
-                        float edgeScale = 0.6f;
-                        float mult = (1f-(Mathf.dst2(startX, startY, x, y) / rad2) + edgeScale) / (1f + edgeScale);
-                        float next = damage * mult - dealt;
-                        //register damage dealt
-                        int p = Point2.pack(startX, startY);
-                        damages.put(p, Math.max(damages.get(p), next));
-                        //register as hit
-                        dealt += build.health;
-
-                        if(next - dealt <= 0){
-                            break;
-                        }
-                    }
-
-                    if(2 * error - yDist > xDist - 2 * error){
-                        error += yDist;
-                        startX += xStep;
-                    }else{
-                        error += xDist;
-                        startY += yStep;
-                    }
-                }
-            }
-
-            //apply damage
-            for(var e : damages){
-                int cx = Point2.x(e.key), cy = Point2.y(e.key);
-                var build = world.build(cx, cy);
-                if(build != null){
-                    build.damage(team, e.value);
-                }
-            }
-        });
+        Explosions.queue(team, x, y, baseRadius, damage);
     }
 
     private static void completeDamage(Team team, float x, float y, float radius, float damage){
@@ -26,7 +26,7 @@ public class EntityCollisions{
     //entity collisions
     private Seq<Hitboxc> arrOut = new Seq<>(Hitboxc.class);
     private Cons<Hitboxc> hitCons = this::updateCollision;
-    private Cons<QuadTree> treeCons = tree -> tree.intersect(r2, arrOut);
+    private Cons<SpatialGrid> treeCons = tree -> tree.intersect(r2, arrOut);
 
     public void moveCheck(Hitboxc entity, float deltax, float deltay, SolidPred solidCheck){
         if(!solidCheck.solid(entity.tileX(), entity.tileY())){
@@ -119,28 +119,27 @@ public class EntityCollisions{
 
     @SuppressWarnings("unchecked")
     public <T extends Hitboxc> void updatePhysics(EntityGroup<T> group){
-        QuadTree tree = group.tree();
-        tree.clear();
+        SpatialGrid tree = group.tree();
 
+        //entities are moved between cells in place instead of rebuilding the whole index
+        tree.beginUpdate();
         group.each(s -> {
             s.updateLastPosition();
-            tree.insert(s);
+            tree.update(s);
         });
+        tree.endUpdate();
     }
 
     public static boolean legsSolid(int x, int y){
-        Tile tile = world.tile(x, y);
-        return tile == null || tile.staticDarkness() >= 2 || (tile.floor().solid && tile.block() == Blocks.air);
+        return world.collisions.legSolid(x, y);
     }
 
     public static boolean waterSolid(int x, int y){
-        Tile tile = world.tile(x, y);
-        return tile == null || tile.solid() || !tile.floor().isLiquid;
+        return world.collisions.waterSolid(x, y);
     }
 
     public static boolean solid(int x, int y){
-        Tile tile = world.tile(x, y);
-        return tile == null || tile.solid();
+        return world.collisions.solid(x, y);
     }
 
     private void checkCollide(Hitboxc a, Hitboxc b){
@@ -3,6 +3,7 @@ package mindustry.entities;
 import arc.*;
 import arc.func.*;
 import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
 import arc.struct.*;
 import arc.util.*;
 import mindustry.gen.*;
@@ -21,7 +22,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     private final Rect viewport = new Rect();
     private final Rect intersectRect = new Rect();
     private IntMap<T> map;
-    private QuadTree tree;
+    private SpatialGrid tree;
     private boolean clearing;
 
     private int index;
@@ -34,7 +35,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
         array = new Seq<>(false, 32, type);
 
         if(spatial){
-            tree = new QuadTree<>(new Rect(0, 0, 0, 0));
+            tree = new SpatialGrid<>(new Rect(0, 0, 0, 0));
         }
 
         if(mapping){
@@ -124,15 +125,15 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
         return intersectArray;
     }
 
-    public QuadTree tree(){
-        if(tree == null) throw new RuntimeException("This group does not support quadtrees! Enable quadtrees when creating it.");
+    public SpatialGrid tree(){
+        if(tree == null) throw new RuntimeException("This group does not support spatial queries! Enable them when creating it.");
         return tree;
     }
 
-    /** Resizes the internal quadtree, if it is enabled.*/
+    /** Resizes the internal spatial grid, if it is enabled.*/
     public void resize(float x, float y, float w, float h){
         if(tree != null){
-            tree = new QuadTree<>(new Rect(x, y, w, h));
+            tree.resize(x, y, w, h);
         }
     }
 
@@ -174,6 +175,9 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
             if(map != null){
                 map.remove(type.id());
             }
+            if(tree != null){
+                tree.remove((QuadTreeObject)type);
+            }
 
             //fix iteration index when removing
             if(index >= idx){
@@ -188,6 +192,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
         array.each(Entityc::remove);
         array.clear();
         if(map != null) map.clear();
+        if(tree != null) tree.clear();
 
         clearing = false;
     }
@@ -0,0 +1,221 @@
+package mindustry.entities;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Resolves the tile damage of explosions in batches; see {@link Damage#tileDamage}.
+ * Explosions are queued into primitive buffers, and processed together once per tick.
+ * Rays are cast over a snapshot of building health and team, which is taken the first time a tile is reached in a tick.
+ * Damage is summed up per tile, and applied to each building once, after all rays have been cast.
+ * Explosions caused by that damage are processed in the next tick.
+ */
+public class Explosions{
+    /** Explosion counts and processing time of recent ticks, in milliseconds. */
+    public static final WindowedMean explosionsPerTick = new WindowedMean(60), timePerTick = new WindowedMean(60);
+
+    //queued explosions: team id (-1 for none) and position, then radius and damage
+    private static IntSeq queued = new IntSeq(), processing = new IntSeq();
+    private static FloatSeq queuedValues = new FloatSeq(), processingValues = new FloatSeq();
+
+    //per-tile snapshot; a tile is valid when its stamp matches the current tick
+    private static int[] stamps = {};
+    private static float[] health = {};
+    //team id of the building, or -1 when there is none
+    private static short[] teams = {};
+    private static int stamp;
+
+    //maximum damage a tile takes from the current explosion
+    private static float[] explosionDamage = {};
+    private static int[] explosionStamps = {};
+    private static int explosionStamp;
+    private static IntSeq explosionTiles = new IntSeq();
+
+    //damage to apply at the end of the tick, and the team it comes from
+    private static float[] pending = {};
+    private static short[] pendingTeams = {};
+    private static IntSeq pendingTiles = new IntSeq();
+
+    /** Queues the tile damage of an explosion, to be dealt at the start of the next tick. */
+    public static void queue(@Nullable Team team, int x, int y, float radius, float damage){
+        queued.add(team == null ? -1 : team.id, Point2.pack(x, y));
+        queuedValues.add(radius, damage);
+    }
+
+    /** Processes all queued explosions. Called once per tick. */
+    public static void update(){
+        if(queued.isEmpty()){
+            explosionsPerTick.add(0);
+            timePerTick.add(0);
+            return;
+        }
+
+        long start = Time.nanos();
+
+        //explosions queued while damage is applied belong to the next tick
+        IntSeq ints = queued;
+        FloatSeq floats = queuedValues;
+        queued = processing;
+        queuedValues = processingValues;
+        processing = ints;
+        processingValues = floats;
+
+        int size = world.width() * world.height();
+        if(stamps.length != size){
+            resize(size);
+        }
+        //invalidate the snapshot of the last tick
+        stamp++;
+
+        int count = ints.size / 2;
+        for(int i = 0; i < count; i++){
+            int pos = ints.items[i * 2 + 1];
+            explode(ints.items[i * 2], Point2.x(pos), Point2.y(pos), floats.items[i * 2], floats.items[i * 2 + 1]);
+        }
+
+        ints.clear();
+        floats.clear();
+
+        //apply damage, once per tile
+        for(int i = 0; i < pendingTiles.size; i++){
+            int index = pendingTiles.items[i];
+            float amount = pending[index];
+            pending[index] = 0f;
+
+            Building build = world.tiles.geti(index).build;
+            if(build != null){
+                build.damage(pendingTeams[index] == -1 ? null : Team.get(pendingTeams[index]), amount);
+            }
+        }
+        pendingTiles.clear();
+
+        explosionsPerTick.add(count);
+        timePerTick.add(Time.timeSinceNanos(start) / 1000000f);
+    }
+
+    public static void clear(){
+        queued.clear();
+        queuedValues.clear();
+        pendingTiles.clear();
+        stamps = new int[0];
+        explosionStamps = new int[0];
+    }
+
+    private static void explode(int team, int x, int y, float baseRadius, float damage){
+        int width = world.width();
+        if(x < 0 || y < 0 || x >= width || y >= world.height()) return;
+
+        int center = x + y * width;
+        snapshot(center);
+
+        //spawned inside a multiblock. this means that damage needs to be dealt directly.
+        //why? because otherwise the building would absorb everything in one cell, which means much less damage than a nearby explosion.
+        //this needs to be compensated
+        Building in = world.tiles.geti(center).build;
+        if(in != null && teams[center] != team && in.block.size > 1 && health[center] > damage){
+            //deal the damage of an entire side, to be equivalent with maximum 'standard' damage
+            addPending(center, team, damage * Math.min((in.block.size), baseRadius * 0.4f));
+            //no need to continue with the explosion
+            return;
+        }
+
+        //cap radius to prevent lag
+        float radius = Math.min(baseRadius, 30), rad2 = radius * radius;
+        int rays = Mathf.ceil(radius * 2 * Mathf.pi);
+        double spacing = Math.PI * 2.0 / rays;
+        explosionStamp++;
+
+        //raycast from each angle
+        for(int i = 0; i <= rays; i++){
+            float dealt = 0f;
+            int startX = x;
+            int startY = y;
+            int endX = x + (int)(Math.cos(spacing * i) * radius), endY = y + (int)(Math.sin(spacing * i) * radius);
+
+            int xDist = Math.abs(endX - startX);
+            int yDist = -Math.abs(endY - startY);
+            int xStep = (startX < endX ? +1 : -1);
+            int yStep = (startY < endY ? +1 : -1);
+            int error = xDist + yDist;
+
+            while(startX != endX || startY != endY){
+                if(startX >= 0 && startY >= 0 && startX < width && startY < world.height()){
+                    int index = startX + startY * width;
+                    snapshot(index);
+
+                    if(teams[index] != -1 && teams[index] != team){
+                        //damage dealt at circle edge
+                        float edgeScale = 0.6f;
+                        float mult = (1f-(Mathf.dst2(startX, startY, x, y) / rad2) + edgeScale) / (1f + edgeScale);
+                        float next = damage * mult - dealt;
+                        //register damage dealt
+                        if(explosionStamps[index] != explosionStamp){
+                            explosionStamps[index] = explosionStamp;
+                            explosionDamage[index] = Math.max(next, 0f);
+                            explosionTiles.add(index);
+                        }else{
+                            explosionDamage[index] = Math.max(explosionDamage[index], next);
+                        }
+                        //register as hit
+                        dealt += health[index];
+
+                        if(next - dealt <= 0){
+                            break;
+                        }
+                    }
+                }
+
+                if(2 * error - yDist > xDist - 2 * error){
+                    error += yDist;
+                    startX += xStep;
+                }else{
+                    error += xDist;
+                    startY += yStep;
+                }
+            }
+        }
+
+        for(int i = 0; i < explosionTiles.size; i++){
+            int index = explosionTiles.items[i];
+            addPending(index, team, explosionDamage[index]);
+        }
+        explosionTiles.clear();
+    }
+
+    private static void snapshot(int index){
+        if(stamps[index] != stamp){
+            stamps[index] = stamp;
+            Building build = world.tiles.geti(index).build;
+            health[index] = build == null ? 0f : build.health;
+            teams[index] = build == null ? -1 : (short)build.team.id;
+        }
+    }
+
+    /** Tiles hit by more than one team in a tick take damage from the first one. */
+    private static void addPending(int index, int team, float amount){
+        if(amount <= 0f) return;
+
+        if(pending[index] == 0f){
+            pendingTeams[index] = (short)team;
+            pendingTiles.add(index);
+        }
+        pending[index] += amount;
+    }
+
+    private static void resize(int size){
+        stamps = new int[size];
+        health = new float[size];
+        teams = new short[size];
+        explosionDamage = new float[size];
+        explosionStamps = new int[size];
+        pending = new float[size];
+        pendingTeams = new short[size];
+        stamp = explosionStamp = 0;
+    }
+}
@@ -0,0 +1,66 @@
+package mindustry.entities;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.gen.*;
+import mindustry.world.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Keeps track of sleeping buildings, which are not in {@link Groups#build} and do not update.
+ * Buildings fall asleep when {@link Building#shouldSleep()} is true for a while, or immediately with {@link Building#sleepFor(float)}.
+ * They are woken up by events: receiving or losing items and liquids, proximity, power, configuration and team changes, or a timer.
+ */
+public class SleepScheduler{
+    /** Buildings that wake up after some time. */
+    private static final Seq<Building> timed = new Seq<>(false, 16, Building.class);
+    private static final ObjectFloatMap<Building> wakeTimes = new ObjectFloatMap<>();
+
+    /** Wakes up buildings whose timer has passed. Called once per tick. */
+    public static void update(){
+        for(int i = 0; i < timed.size; i++){
+            Building build = timed.items[i];
+
+            if(!build.isValid() || !build.isSleeping()){
+                //woken up by an event, or removed
+                wakeTimes.remove(build, 0f);
+                timed.remove(i--);
+            }else if(Time.time >= wakeTimes.get(build, 0f)){
+                wakeTimes.remove(build, 0f);
+                timed.remove(i--);
+                build.noSleep();
+            }
+        }
+    }
+
+    /** Wakes up a sleeping building after some time, in ticks. Replaces any previous timer. */
+    public static void wakeAfter(Building build, float ticks){
+        if(!wakeTimes.containsKey(build)){
+            timed.add(build);
+        }
+        wakeTimes.put(build, Time.time + ticks);
+    }
+
+    public static void clear(){
+        timed.clear();
+        wakeTimes.clear();
+    }
+
+    /** Counts buildings that update, by block. Buildings of blocks that never update are not counted. */
+    public static void count(ObjectIntMap<Block> active, ObjectIntMap<Block> sleeping){
+        active.clear();
+        sleeping.clear();
+
+        for(Tile tile : world.tiles){
+            Building build = tile.build;
+            if(build == null || !tile.isCenter() || !build.block.update) continue;
+
+            if(build.isSleeping()){
+                sleeping.increment(build.block);
+            }else{
+                active.increment(build.block);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+
+/**
+ * A uniform grid of objects, bucketed by the center of their hitbox.
+ * Unlike a {@link QuadTree}, objects are moved between cells in place, so the grid does not need to be rebuilt every frame.
+ * Objects outside the bounds are stored in the closest edge cell.
+ * Removing objects while a query is running is allowed; the removal is applied once the outermost query finishes.
+ */
+@SuppressWarnings("unchecked")
+public class SpatialGrid<T extends QuadTreeObject>{
+    /** Default size of a cell, in world units. */
+    public static final float defaultCellSize = 64f;
+
+    private final float cellSize;
+    private final Rect rect = new Rect();
+    /** Cell index of every object in the grid. */
+    private final ObjectIntMap<T> indices = new ObjectIntMap<>();
+    private final Seq<QuadTreeObject> pendingRemove = new Seq<>(false, 16, QuadTreeObject.class);
+
+    private float x, y;
+    private int width = 1, height = 1;
+    private Seq<QuadTreeObject>[] cells = new Seq[1];
+    /** Largest hitbox dimension of all objects; queries are expanded by half of it. */
+    private float maxSize, passMaxSize;
+    /** Depth of queries currently running. */
+    private int iterating;
+
+    public SpatialGrid(float cellSize, Rect bounds){
+        this.cellSize = cellSize;
+        resize(bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    public SpatialGrid(Rect bounds){
+        this(defaultCellSize, bounds);
+    }
+
+    /** Changes the bounds of the grid. All objects are removed. */
+    public void resize(float x, float y, float width, float height){
+        this.x = x;
+        this.y = y;
+        this.width = Math.max((int)Math.ceil(width / cellSize), 1);
+        this.height = Math.max((int)Math.ceil(height / cellSize), 1);
+        this.cells = new Seq[this.width * this.height];
+        indices.clear();
+        pendingRemove.clear();
+        maxSize = 0f;
+    }
+
+    /** Removes all objects. */
+    public void clear(){
+        for(Seq<QuadTreeObject> cell : cells){
+            if(cell != null) cell.clear();
+        }
+        indices.clear();
+        pendingRemove.clear();
+        maxSize = 0f;
+    }
+
+    /** Begins an update pass. At the end of the pass, the query margin is shrunk to fit the objects updated during it. */
+    public void beginUpdate(){
+        passMaxSize = 0f;
+    }
+
+    /** Ends an update pass; every object in the grid should have been updated since {@link #beginUpdate()}. */
+    public void endUpdate(){
+        maxSize = passMaxSize;
+    }
+
+    /** Same as {@link #update}. */
+    public void insert(T object){
+        update(object);
+    }
+
+    /** Adds an object, or moves it to the cell it is in now. */
+    public void update(T object){
+        object.hitbox(rect);
+        float size = Math.max(rect.width, rect.height);
+        maxSize = Math.max(maxSize, size);
+        passMaxSize = Math.max(passMaxSize, size);
+
+        int cell = cellX(rect.x + rect.width / 2f) + cellY(rect.y + rect.height / 2f) * width;
+        int last = indices.get(object, -1);
+
+        if(last != cell){
+            if(last != -1) cells[last].remove(object, true);
+
+            //typed arrays, so that items can be accessed directly
+            if(cells[cell] == null) cells[cell] = new Seq<>(false, 8, QuadTreeObject.class);
+            cells[cell].add(object);
+            indices.put(object, cell);
+        }
+    }
+
+    /** Removes an object. When a query is running, this is delayed until it has finished. */
+    public void remove(T object){
+        if(iterating > 0){
+            pendingRemove.add(object);
+            return;
+        }
+
+        int last = indices.remove(object, -1);
+        if(last != -1){
+            cells[last].remove(object, true);
+        }
+    }
+
+    public int size(){
+        return indices.size;
+    }
+
+    /** Iterates through every object in the grid. */
+    public void each(Cons<? super T> cons){
+        iterating++;
+        try{
+            for(Seq<QuadTreeObject> cell : cells){
+                if(cell == null) continue;
+                for(int i = 0; i < cell.size; i++){
+                    cons.get((T)cell.items[i]);
+                }
+            }
+        }finally{
+            finishQuery();
+        }
+    }
+
+    /** Calls the consumer for every object with a hitbox that overlaps this rectangle. */
+    public void intersect(float x, float y, float width, float height, Cons<? super T> out){
+        float margin = maxSize / 2f;
+        int minx = cellX(x - margin), miny = cellY(y - margin), maxx = cellX(x + width + margin), maxy = cellY(y + height + margin);
+
+        iterating++;
+        try{
+            for(int cy = miny; cy <= maxy; cy++){
+                for(int cx = minx; cx <= maxx; cx++){
+                    Seq<QuadTreeObject> cell = cells[cx + cy * this.width];
+                    if(cell == null) continue;
+
+                    for(int i = 0; i < cell.size; i++){
+                        T object = (T)cell.items[i];
+                        object.hitbox(rect);
+                        if(rect.overlaps(x, y, width, height)){
+                            out.get(object);
+                        }
+                    }
+                }
+            }
+        }finally{
+            finishQuery();
+        }
+    }
+
+    public void intersect(Rect rect, Cons<? super T> out){
+        intersect(rect.x, rect.y, rect.width, rect.height, out);
+    }
+
+    /** Adds every object with a hitbox that overlaps this rectangle to the output. */
+    public void intersect(Rect toCheck, Seq<? super T> out){
+        float x = toCheck.x, y = toCheck.y, width = toCheck.width, height = toCheck.height;
+        float margin = maxSize / 2f;
+        int minx = cellX(x - margin), miny = cellY(y - margin), maxx = cellX(x + width + margin), maxy = cellY(y + height + margin);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cx = minx; cx <= maxx; cx++){
+                Seq<QuadTreeObject> cell = cells[cx + cy * this.width];
+                if(cell == null) continue;
+
+                for(int i = 0; i < cell.size; i++){
+                    T object = (T)cell.items[i];
+                    object.hitbox(rect);
+                    if(rect.overlaps(x, y, width, height)){
+                        out.add(object);
+                    }
+                }
+            }
+        }
+    }
+
+    private void finishQuery(){
+        if(--iterating == 0 && pendingRemove.size > 0){
+            for(int i = 0; i < pendingRemove.size; i++){
+                remove((T)pendingRemove.items[i]);
+            }
+            pendingRemove.clear();
+        }
+    }
+
+    private int cellX(float wx){
+        return Mathf.clamp((int)((wx - x) / cellSize), 0, width - 1);
+    }
+
+    private int cellY(float wy){
+        return Mathf.clamp((int)((wy - y) / cellSize), 0, height - 1);
+    }
+}
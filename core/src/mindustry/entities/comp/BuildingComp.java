@@ -67,6 +67,9 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     float enabledControlTime;
     String lastAccessed;
     boolean wasDamaged; //used only by the indexer
+    boolean syncDirty = true; //used only by block snapshots
+    float syncPowerStatus; //used only by block snapshots
+    int syncRepeats; //used only by block snapshots
 
     PowerModule power;
     ItemModule items;
@@ -399,6 +402,29 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         }
     }
 
+    /** Stops updating immediately. Wakes up after some time in ticks, or on any event that calls {@link #noSleep()}. */
+    public void sleepFor(float ticks){
+        if(!sleeping){
+            remove();
+            sleeping = true;
+            sleepingEntities++;
+        }
+        SleepScheduler.wakeAfter(self(), ticks);
+    }
+
+    /**
+     * @return whether this building has nothing to do until something else changes it.
+     * When true for a while, the building stops updating until it receives or loses items or liquids, its proximity, power status, configuration or team changes.
+     */
+    public boolean shouldSleep(){
+        //derelict blocks that don't update when disabled can never do anything
+        return team == Team.derelict && block.noUpdateDisabled;
+    }
+
+    public boolean isSleeping(){
+        return sleeping;
+    }
+
     /** Returns the version of this Building IO code.*/
     public byte version(){
         return 0;
@@ -564,6 +590,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleItem(Building source, Item item){
+        noSleep();
         items.add(item, 1);
     }
 
@@ -576,6 +603,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleLiquid(Building source, Liquid liquid, float amount){
+        noSleep();
         liquids.add(liquid, amount);
     }
 
@@ -1016,6 +1044,30 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     public void unitRemoved(Unit unit){
     }
 
+    /**
+     * @return whether the items, liquids, power or configuration of this building changed in the last few calls.
+     * Used by the server to decide which buildings are included in block snapshots. Block snapshots are unreliable,
+     * so a change is reported for {@code repeats} calls in a row, and a single lost snapshot does not leave clients out of date.
+     */
+    public boolean checkSyncDirty(int repeats){
+        boolean dirty = syncDirty ||
+            (items != null && items.dirty) ||
+            (liquids != null && liquids.dirty) ||
+            (power != null && !Mathf.equal(power.status, syncPowerStatus, 0.01f));
+
+        syncDirty = false;
+        if(items != null) items.dirty = false;
+        if(liquids != null) liquids.dirty = false;
+        if(power != null) syncPowerStatus = power.status;
+
+        if(dirty) syncRepeats = repeats;
+        if(syncRepeats > 0){
+            syncRepeats--;
+            return true;
+        }
+        return false;
+    }
+
     /** Called when arbitrary configuration is applied to a tile. */
     public void configured(@Nullable Unit builder, @Nullable Object value){
         //null is of type void.class; anonymous classes use their superclass.
@@ -1029,6 +1081,9 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
             lastAccessed = builder.getPlayer().name;
         }
 
+        syncDirty = true;
+        noSleep();
+
         if(block.configurations.containsKey(type)){
             block.configurations.get(type).get(this, value);
         }else if(value instanceof Building build){
@@ -1310,6 +1365,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         Team last = this.team;
         indexer.removeIndex(tile);
         this.team = next;
+        noSleep();
         indexer.addIndex(tile);
         Events.fire(teamChangeEvent.set(last, self()));
     }
@@ -1504,6 +1560,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         if(type == LAccess.enabled){
             enabled = !Mathf.zero((float)p1);
             enabledControlTime = timeToUncontrol;
+            noSleep();
         }
     }
 
@@ -1587,6 +1644,11 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         }
 
         updateFlow = false;
+
+        //buildings in payloads are not in the world, and cannot be woken up by it
+        if(shouldSleep() && isValid()){
+            sleep();
+        }
     }
 
     @Override
@@ -8,6 +8,7 @@ import arc.util.*;
 import mindustry.annotations.Annotations.*;
 import mindustry.content.*;
 import mindustry.core.*;
+import mindustry.entities.*;
 import mindustry.entities.bullet.*;
 import mindustry.game.*;
 import mindustry.game.Teams.*;
@@ -38,7 +39,7 @@ abstract class BulletComp implements Timedc, Damagec, Hitboxc, Teamc, Posc, Draw
     transient @Nullable Trail trail;
 
     @Override
-    public void getCollisions(Cons<QuadTree> consumer){
+    public void getCollisions(Cons<SpatialGrid> consumer){
         Seq<TeamData> data = state.teams.present;
         for(int i = 0; i < data.size; i++){
             if(data.items[i].team != team){
@@ -137,23 +138,24 @@ abstract class BulletComp implements Timedc, Damagec, Hitboxc, Teamc, Posc, Draw
         int y = y0f, dy = Math.abs(y1 - y), sy = y < y1 ? 1 : -1;
         int e2, err = dx - dy;
         int ww = world.width(), wh = world.height();
+        CollisionGrid grid = world.collisions;
 
         while(x >= 0 && y >= 0 && x < ww && y < wh){
-            Building build = world.build(x, y);
-
-            if(type.collideFloor || type.collideTerrain){
-                Tile tile = world.tile(x, y);
-                if(
-                    type.collideFloor && (tile == null || tile.floor().hasSurface() || tile.block() != Blocks.air) ||
-                    type.collideTerrain && tile != null && tile.block() instanceof StaticWall
-                ){
-                    type.despawned(self());
-                    remove();
-                    hit = true;
-                    return;
-                }
+            //only look at tiles and buildings when the flags say there is something to hit
+            int flags = grid.get(x, y);
+
+            if(
+                type.collideFloor && (flags & CollisionGrid.bitSurface) != 0 ||
+                type.collideTerrain && (flags & CollisionGrid.bitStaticWall) != 0
+            ){
+                type.despawned(self());
+                remove();
+                hit = true;
+                return;
             }
 
+            Building build = (flags & CollisionGrid.bitBuilding) != 0 && (type.collidesTeam || grid.team(x, y) != team.id) ? world.build(x, y) : null;
+
             if(build != null && isAdded() && build.collide(self()) && type.testCollision(self(), build)
                 && !build.dead() && (type.collidesTeam || build.team != team) && !(type.pierceBuilding && hasCollided(build.id))){
 
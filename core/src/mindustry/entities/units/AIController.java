@@ -173,7 +173,7 @@ public class AIController implements UnitController{
 
     public Teamc targetFlag(float x, float y, BlockFlag flag, boolean enemy){
         if(unit.team == Team.derelict) return null;
-        Tile target = Geometry.findClosest(x, y, enemy ? indexer.getEnemy(unit.team, flag) : indexer.getAllied(unit.team, flag));
+        Tile target = enemy ? indexer.findClosestEnemyFlag(x, y, unit.team, flag) : indexer.findClosestFlag(x, y, unit.team, flag);
         return target == null ? null : target.build;
     }
 
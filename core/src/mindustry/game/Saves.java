@@ -27,6 +27,7 @@ public class Saves{
     private @Nullable SaveSlot lastSectorSave;
     AsyncExecutor previewExecutor = new AsyncExecutor(1);
     private boolean saving;
+    private @Nullable MetaIndex metaIndex;
     private float time;
 
     long totalPlaytime;
@@ -47,11 +48,21 @@ public class Saves{
     public void load(){
         saves.clear();
 
-        for(Fi file : saveDirectory.list()){
-            if(!file.name().contains("backup") && SaveIO.isSaveValid(file)){
-                SaveSlot slot = new SaveSlot(file);
+        //only saves that changed since the last load are read, in parallel
+        Seq<Fi> files = Seq.with(saveDirectory.list()).select(f -> f.extension().equals(saveExtension) && !f.name().contains("backup"));
+        if(metaIndex == null || !metaIndex.directory.equals(saveDirectory)) metaIndex = new MetaIndex(saveDirectory);
+        MetaIndex.Entry[] entries = metaIndex.resolve(files, maps.executor);
+
+        for(int i = 0; i < files.size; i++){
+            if(entries[i] == null) continue;
+
+            try{
+                SaveSlot slot = new SaveSlot(files.get(i));
+                slot.meta = SaveIO.getMeta(new StringMap(entries[i].tags));
                 saves.add(slot);
-                slot.meta = SaveIO.getMeta(file);
+            }catch(Throwable e){
+                Log.err("Failed to load save file '@'!", files.get(i));
+                Log.err(e);
             }
         }
 
@@ -9,6 +9,7 @@ import arc.util.*;
 import mindustry.*;
 import mindustry.ai.*;
 import mindustry.content.*;
+import mindustry.entities.*;
 import mindustry.entities.units.*;
 import mindustry.gen.*;
 import mindustry.type.*;
@@ -157,7 +158,7 @@ public class Teams{
             data.unitCount = 0;
             data.units.clear();
             if(data.tree != null){
-                data.tree.clear();
+                data.tree.beginUpdate();
             }
 
             if(data.typeCounts != null){
@@ -180,7 +181,7 @@ public class Teams{
         for(Unit unit : Groups.unit){
             if(unit.type == null) continue;
             TeamData data = unit.team.data();
-            data.tree().insert(unit);
+            data.tree().update(unit);
             data.units.add(unit);
             data.presentFlag = true;
 
@@ -205,6 +206,20 @@ public class Teams{
         for(Team team : Team.all){
             TeamData data = team.data();
 
+            if(data.tree != null){
+                data.tree.endUpdate();
+
+                //every unit in the list was updated, so any extra units in the index have died or switched teams
+                if(data.tree.size() != data.units.size){
+                    SpatialGrid<Unit> tree = data.tree;
+                    tree.each(u -> {
+                        if(u.team != team || !u.isAdded() || u.type == null){
+                            tree.remove(u);
+                        }
+                    });
+                }
+            }
+
             if(data.presentFlag || data.active()){
                 present.add(data);
             }
@@ -253,9 +268,9 @@ public class Teams{
         /** Counts for each type of unit. Do not access directly. */
         @Nullable
         public int[] typeCounts;
-        /** Quadtree for units of this team. Do not access directly. */
+        /** Spatial index for units of this team. Do not access directly. */
         @Nullable
-        public QuadTree<Unit> tree;
+        public SpatialGrid<Unit> tree;
         /** Units of this team. Updated each frame. */
         public Seq<Unit> units = new Seq<>();
         /** Units of this team by type. Updated each frame. */
@@ -310,8 +325,8 @@ public class Teams{
             typeCounts[type.id] = Math.max(amount + typeCounts[type.id], 0);
         }
 
-        public QuadTree<Unit> tree(){
-            if(tree == null) tree = new QuadTree<>(Vars.world.getQuadBounds(new Rect()));
+        public SpatialGrid<Unit> tree(){
+            if(tree == null) tree = new SpatialGrid<>(Vars.world.getQuadBounds(new Rect()));
             return tree;
         }
 
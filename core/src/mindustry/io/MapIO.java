@@ -14,7 +14,6 @@ import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.storage.*;
 
 import java.io.*;
-import java.util.zip.*;
 
 import static mindustry.Vars.*;
 
@@ -36,7 +35,7 @@ public class MapIO{
     }
 
     public static Map createMap(Fi file, boolean custom) throws IOException{
-        try(InputStream is = new InflaterInputStream(file.read(bufferSize)); CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
+        try(InputStream is = SaveIO.readStream(file.read(bufferSize)); CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
             SaveIO.readHeader(stream);
             int version = stream.readInt();
             SaveVersion ver = SaveIO.getSaveWriter(version);
@@ -66,7 +65,7 @@ public class MapIO{
         map.setSpawns(0);
         map.teams.clear();
 
-        try(InputStream is = new InflaterInputStream(map.file.read(bufferSize)); CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
+        try(InputStream is = SaveIO.readStream(map.file.read(bufferSize)); CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
             SaveIO.readHeader(stream);
             int version = stream.readInt();
             SaveVersion ver = SaveIO.getSaveWriter(version);
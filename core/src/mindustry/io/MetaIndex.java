@@ -0,0 +1,188 @@
+package mindustry.io;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Version and tags of the save or map files in a directory, stored in an index file in that directory.
+ * Entries are keyed by file name, and are only used while the size and modification time of the file stay the same;
+ * other files are read again, in parallel when an executor is given.
+ */
+public class MetaIndex{
+    /** Name of the index file, which lives next to the files it describes. */
+    public static final String fileName = "meta-index.dat";
+    private static final int indexVersion = 1;
+
+    public final Fi directory;
+    /** Files that were found in the index, or had to be read, in the last call to {@link #resolve}. */
+    public int hits, misses;
+
+    private final ObjectMap<String, Entry> entries = new ObjectMap<>();
+    private boolean loaded;
+
+    public MetaIndex(Fi directory){
+        this.directory = directory;
+    }
+
+    /**
+     * Resolves the metadata of all files of the directory that are relevant, e.g. all maps. Entries of files not in the list are dropped.
+     * @param executor runs file reads, or null to read on the calling thread.
+     * @return entries in the order of the files; null for files that could not be read.
+     */
+    public Entry[] resolve(Seq<Fi> files, @Nullable ExecutorService executor){
+        if(!loaded){
+            loaded = true;
+            load();
+        }
+
+        Entry[] result = new Entry[files.size];
+        Seq<Future<?>> tasks = new Seq<>();
+        hits = misses = 0;
+
+        for(int i = 0; i < files.size; i++){
+            Fi file = files.get(i);
+            Entry entry = entries.get(file.name());
+
+            if(entry != null && entry.length == file.length() && entry.modified == file.lastModified()){
+                result[i] = entry;
+                hits++;
+            }else{
+                int index = i;
+                misses++;
+
+                if(executor == null){
+                    result[index] = readOrNull(file);
+                }else{
+                    tasks.add(executor.submit(() -> result[index] = readOrNull(file)));
+                }
+            }
+        }
+
+        for(Future<?> task : tasks){
+            try{
+                task.get();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }catch(ExecutionException e){
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        boolean changed = misses > 0 || entries.size != hits;
+        entries.clear();
+        for(int i = 0; i < files.size; i++){
+            if(result[i] != null){
+                entries.put(files.get(i).name(), result[i]);
+            }
+        }
+
+        if(changed){
+            save();
+        }
+
+        return result;
+    }
+
+    /** Reads the version and tags of a save or map file, without parsing them. */
+    public static Entry read(Fi file) throws IOException{
+        //taken before reading, so a file that changes while it is read is read again next time
+        long length = file.length(), modified = file.lastModified();
+
+        try(DataInputStream stream = SaveIO.getStream(file)){
+            SaveIO.readHeader(stream);
+            int version = stream.readInt();
+            SaveVersion ver = SaveIO.getSaveWriter(version);
+            if(ver == null) throw new IOException("Unknown save version: " + version);
+
+            stream.readInt(); //length of the meta region
+            return new Entry(length, modified, version, ver.readStringMap(stream));
+        }
+    }
+
+    private static @Nullable Entry readOrNull(Fi file){
+        try{
+            return read(file);
+        }catch(Throwable e){
+            Log.err("Failed to read metadata of '@'!", file);
+            Log.err(e);
+            return null;
+        }
+    }
+
+    private void load(){
+        Fi file = directory.child(fileName);
+        if(!file.exists()) return;
+
+        try(DataInputStream stream = new DataInputStream(file.read(bufferSize))){
+            if(stream.readInt() != indexVersion) return;
+
+            int amount = stream.readInt();
+            for(int i = 0; i < amount; i++){
+                String name = stream.readUTF();
+                long length = stream.readLong(), modified = stream.readLong();
+                int version = stream.readInt();
+                int tagAmount = stream.readInt();
+                StringMap tags = new StringMap();
+                for(int j = 0; j < tagAmount; j++){
+                    tags.put(stream.readUTF(), stream.readUTF());
+                }
+                entries.put(name, new Entry(length, modified, version, tags));
+            }
+        }catch(Throwable e){
+            Log.warn("Failed to read metadata index '@', all files will be read again.", file);
+            Log.err(e);
+            entries.clear();
+        }
+    }
+
+    private void save(){
+        //write next to the index, so a failed write never leaves half an index behind
+        Fi file = directory.child(fileName), temp = directory.child(fileName + ".tmp");
+
+        try(DataOutputStream stream = new DataOutputStream(temp.write(false, bufferSize))){
+            stream.writeInt(indexVersion);
+            stream.writeInt(entries.size);
+            for(var e : entries){
+                Entry entry = e.value;
+                stream.writeUTF(e.key);
+                stream.writeLong(entry.length);
+                stream.writeLong(entry.modified);
+                stream.writeInt(entry.version);
+                stream.writeInt(entry.tags.size);
+                for(var tag : entry.tags){
+                    stream.writeUTF(tag.key);
+                    stream.writeUTF(tag.value);
+                }
+            }
+        }catch(Throwable e){
+            Log.err("Failed to write metadata index '@'.", file);
+            Log.err(e);
+            temp.delete();
+            return;
+        }
+
+        temp.moveTo(file);
+    }
+
+    /** Metadata of a file. The tags are shared with the index, and must be copied before they are changed. */
+    public static class Entry{
+        public final long length, modified;
+        /** Save format version of the file. */
+        public final int version;
+        public final StringMap tags;
+
+        public Entry(long length, long modified, int version, StringMap tags){
+            this.length = length;
+            this.modified = modified;
+            this.version = version;
+            this.tags = tags;
+        }
+    }
+}
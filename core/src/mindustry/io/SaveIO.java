@@ -7,11 +7,14 @@ import arc.util.*;
 import arc.util.io.*;
 import mindustry.*;
 import mindustry.game.EventType.*;
+import mindustry.game.*;
 import mindustry.io.legacy.*;
 import mindustry.io.versions.*;
 import mindustry.world.*;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
 import java.util.*;
 import java.util.zip.*;
 
@@ -21,7 +24,9 @@ public class SaveIO{
     /** Save format header. */
     public static final byte[] header = {'M', 'S', 'A', 'V'};
     public static final IntMap<SaveVersion> versions = new IntMap<>();
-    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5());
+    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6());
+    /** Highest heap usage seen while the last save was loaded, in bytes. Sampled between loading steps, so short spikes can be missed. */
+    public static long loadPeakMemory;
 
     static{
         for(SaveVersion version : versionArray){
@@ -49,15 +54,32 @@ public class SaveIO{
     }
 
     public static DataInputStream getStream(Fi file){
-        return new DataInputStream(new InflaterInputStream(file.read(bufferSize)));
+        try{
+            return new DataInputStream(readStream(file.read(bufferSize)));
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
     }
 
     public static DataInputStream getBackupStream(Fi file){
-        return new DataInputStream(new InflaterInputStream(backupFileFor(file).read(bufferSize)));
+        return getStream(backupFileFor(file));
+    }
+
+    /** @return a stream of save data. Saves are deflated, unless their version compresses its own data; see {@link SaveVersion#compressed()}. */
+    public static InputStream readStream(InputStream is) throws IOException{
+        PushbackInputStream in = new PushbackInputStream(is, 1);
+        int first = in.read();
+        if(first != -1) in.unread(first);
+        return first == header[0] ? in : new InflaterInputStream(in);
+    }
+
+    /** @return a stream to write a save of some version to; versions that compress their own data are not deflated again. */
+    public static OutputStream writeStream(OutputStream os, SaveVersion ver){
+        return ver.compressed() ? os : new FastDeflaterOutputStream(os);
     }
 
     public static boolean isSaveValid(Fi file){
-        try(DataInputStream stream = new DataInputStream(new InflaterInputStream(file.read(bufferSize)))){
+        try(DataInputStream stream = getStream(file)){
             return isSaveValid(stream);
         }catch(Throwable e){
             return false;
@@ -95,6 +117,20 @@ public class SaveIO{
         }
     }
 
+    /** Creates metadata from the tags of a save, e.g. from a {@link MetaIndex}. */
+    public static SaveMeta getMeta(StringMap tags){
+        return new SaveMeta(
+            tags.getInt("version"),
+            tags.getLong("saved"),
+            tags.getLong("playtime"),
+            tags.getInt("build"),
+            tags.get("mapname"),
+            tags.getInt("wave"),
+            JsonIO.read(Rules.class, tags.get("rules", "{}")),
+            tags
+        );
+    }
+
     public static Fi fileFor(int slot){
         return saveDirectory.child(slot + "." + Vars.saveExtension);
     }
@@ -104,17 +140,73 @@ public class SaveIO{
     }
 
     public static void write(Fi file, StringMap tags){
-        write(new FastDeflaterOutputStream(file.write(false, bufferSize)), tags);
+        write(writeStream(file.write(false, bufferSize), getVersion()), tags);
     }
 
     public static void write(Fi file){
         write(file, null);
     }
 
+    /**
+     * Serializes the current game state into uncompressed save data, which can be written to disk later using {@link #writeSnapshot(Fi, byte[])}.
+     * This must be called on the main thread; it is considerably faster than {@link #save(Fi)}, as no compression is done.
+     */
+    public static byte[] snapshot(@Nullable StringMap tags){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(world.width() * world.height() * 4, 1024));
+        SaveVersion ver = getVersion();
+        ver.deflate = false;
+        try{
+            write(out, tags, ver);
+        }finally{
+            ver.deflate = true;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compresses and writes save data created by {@link #snapshot(StringMap)}. Safe to call from any thread.
+     * Data is written to a temporary file first, which then atomically replaces the target file; the previous file is copied to the backup beforehand.
+     */
+    public static void writeSnapshot(Fi file, byte[] data){
+        Fi temp = file.sibling(file.name() + ".tmp");
+        SaveVersion ver = versionOf(data);
+
+        try(OutputStream out = writeStream(temp.write(false, bufferSize), ver)){
+            out.write(ver.compress(data));
+        }catch(IOException e){
+            temp.delete();
+            throw new RuntimeException(e);
+        }
+
+        try{
+            //the previous file is copied, not moved, so a complete save exists at every point of the swap
+            if(file.exists()){
+                Files.copy(file.file().toPath(), backupFileFor(file).file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            try{
+                Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch(AtomicMoveNotSupportedException e){
+                Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return the version that wrote save data, which must not be deflated. */
+    static SaveVersion versionOf(byte[] data){
+        return versions.get(ByteBuffer.wrap(data).getInt(header.length));
+    }
+
     public static void write(OutputStream os, StringMap tags){
+        write(os, tags, getVersion());
+    }
+
+    /** Writes a save in a specific format version. Older versions can be used to compare formats, but may not store everything. */
+    public static void write(OutputStream os, @Nullable StringMap tags, SaveVersion ver){
         try(DataOutputStream stream = new DataOutputStream(os)){
             Events.fire(new SaveWriteEvent());
-            SaveVersion ver = getVersion();
 
             stream.write(header);
             stream.writeInt(ver.version);
@@ -139,27 +231,32 @@ public class SaveIO{
     public static void load(Fi file, WorldContext context) throws SaveException{
         try{
             //try and load; if any exception at all occurs
-            load(new InflaterInputStream(file.read(bufferSize)), context);
+            load(file.read(bufferSize), context);
         }catch(SaveException e){
             Log.err(e);
             Fi backup = file.sibling(file.name() + "-backup." + file.extension());
             if(backup.exists()){
-                load(new InflaterInputStream(backup.read(bufferSize)), context);
+                load(backup.read(bufferSize), context);
             }else{
                 throw new SaveException(e.getCause());
             }
         }
     }
 
-    /** Loads from a deflated (!) input stream. */
+    /** Loads from a save stream, which is inflated when needed; see {@link #readStream(InputStream)}. */
     public static void load(InputStream is, WorldContext context) throws SaveException{
-        try(CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
+        try(CounterInputStream counter = new CounterInputStream(readStream(is)); DataInputStream stream = new DataInputStream(counter)){
+            long start = Time.millis();
+            loadPeakMemory = 0;
+
             logic.reset();
             readHeader(stream);
             int version = stream.readInt();
             SaveVersion ver = versions.get(version);
 
             ver.read(stream, counter, context);
+            sampleLoadMemory();
+            Log.debug("Loaded save version @ in @ms; peak heap usage: @ MB.", version, Time.timeSinceMillis(start), loadPeakMemory / 1024 / 1024);
             Events.fire(new SaveLoadEvent());
         }catch(Throwable e){
             throw new SaveException(e);
@@ -169,6 +266,12 @@ public class SaveIO{
         }
     }
 
+    /** Updates {@link #loadPeakMemory} with the current heap usage. */
+    public static void sampleLoadMemory(){
+        Runtime runtime = Runtime.getRuntime();
+        loadPeakMemory = Math.max(loadPeakMemory, runtime.totalMemory() - runtime.freeMemory());
+    }
+
     public static SaveVersion getVersion(){
         return versionArray.peek();
     }
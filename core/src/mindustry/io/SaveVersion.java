@@ -23,6 +23,8 @@ import static mindustry.Vars.*;
 
 public abstract class SaveVersion extends SaveFileReader{
     public int version;
+    /** When false, versions that compress their own data store it as it is, so that it can be compressed later with {@link #compress(byte[])}. */
+    public boolean deflate = true;
 
     //HACK stores the last read build of the save file, valid after read meta call
     protected int lastReadBuild;
@@ -34,19 +36,19 @@ public abstract class SaveVersion extends SaveFileReader{
         this.version = version;
     }
 
+    /** @return whether this version compresses its own data. Its saves are written without an outer deflate stream. */
+    public boolean compressed(){
+        return false;
+    }
+
+    /** Compresses save data that was written with {@link #deflate} off. Versions that do not compress their own data return it as it is. */
+    public byte[] compress(byte[] data) throws IOException{
+        return data;
+    }
+
     public SaveMeta getMeta(DataInput stream) throws IOException{
         stream.readInt(); //length of data, doesn't matter here
-        StringMap map = readStringMap(stream);
-        return new SaveMeta(
-            map.getInt("version"),
-            map.getLong("saved"),
-            map.getLong("playtime"),
-            map.getInt("build"),
-            map.get("mapname"),
-            map.getInt("wave"),
-            JsonIO.read(Rules.class, map.get("rules", "{}")),
-            map
-        );
+        return SaveIO.getMeta(readStringMap(stream));
     }
 
     @Override
@@ -61,6 +63,7 @@ public abstract class SaveVersion extends SaveFileReader{
 
         try{
             region("map", stream, counter, in -> readMap(in, context));
+            SaveIO.sampleLoadMemory();
             region("entities", stream, counter, this::readEntities);
         }finally{
             content.setTemporaryMapper(null);
@@ -0,0 +1,530 @@
+package mindustry.io.versions;
+
+import arc.math.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.content.*;
+import mindustry.io.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Splits the map into square regions, which are compressed separately and in parallel.
+ * The map region stores all compressed regions back to back, followed by an index with the offset and uncompressed size of each one.
+ * Regions that do not get smaller are stored as they are. Entities are deflated as one block, and the save is written without an outer deflate stream.
+ * Tiles and buildings are still encoded and decoded on the calling thread, as buildings are not safe to access from other threads.
+ * Loading decodes two rows of regions at a time into a fixed set of buffers, so the uncompressed map is never held in memory at once.
+ */
+public class Save6 extends SaveVersion{
+    /** Size of a region, in tiles. */
+    public static final int regionSize = 64;
+
+    private static final int threads = Math.max(OS.cores - 1, 1);
+
+    //decode buffers and their readers, reused between loads
+    private byte[][] buffers = {};
+    private Inflater[] inflaters = {};
+    private ReusableByteInStream[] streams = {};
+    private DataInputStream[] inputs = {};
+
+    public Save6(){
+        super(6);
+    }
+
+    @Override
+    public void writeMap(DataOutput stream) throws IOException{
+        int width = world.width(), height = world.height();
+        int regionsX = Mathf.ceil(width / (float)regionSize), regionsY = Mathf.ceil(height / (float)regionSize), regions = regionsX * regionsY;
+
+        stream.writeShort(width);
+        stream.writeShort(height);
+        stream.writeShort(regionSize);
+
+        ReusableByteOutStream bytes = new ReusableByteOutStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[][] raw = new byte[regions][];
+
+        for(int i = 0; i < regions; i++){
+            bytes.reset();
+            writeRegion(out, (i % regionsX) * regionSize, (i / regionsX) * regionSize, width, height);
+            raw[i] = Arrays.copyOf(bytes.getBytes(), bytes.size());
+        }
+
+        byte[][] compressed = deflate ? run(regions, i -> deflate(raw[i], 0, raw[i].length)) : raw;
+
+        int total = 0;
+        for(byte[] data : compressed){
+            total += data.length;
+        }
+
+        stream.writeInt(regions);
+        stream.writeInt(total);
+        for(byte[] data : compressed){
+            stream.write(data);
+        }
+
+        //index
+        int offset = 0;
+        for(int i = 0; i < regions; i++){
+            stream.writeInt(offset);
+            stream.writeInt(raw[i].length);
+            offset += compressed[i].length;
+        }
+    }
+
+    @Override
+    public void readMap(DataInput stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int size = stream.readUnsignedShort();
+        int regionsX = Mathf.ceil(width / (float)size), regionsY = Mathf.ceil(height / (float)size);
+
+        int regions = stream.readInt();
+        if(regions != regionsX * regionsY){
+            throw new IOException("Region count mismatch. Expected: " + regionsX * regionsY + "; Actual: " + regions);
+        }
+
+        byte[] data = new byte[stream.readInt()];
+        stream.readFully(data);
+
+        int[] offsets = new int[regions + 1], lengths = new int[regions];
+        for(int i = 0; i < regions; i++){
+            offsets[i] = stream.readInt();
+            lengths[i] = stream.readInt();
+        }
+        offsets[regions] = data.length;
+
+        //two rows of regions are decoded at a time
+        ensureBuffers(regionsX * 2);
+        SaveIO.sampleLoadMemory();
+
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            //every tile a block touches has to exist before it is placed. multiblocks only reach into neighbouring regions,
+            //so floors are read one row of regions ahead of blocks, and blocks are still placed in the order they were written in
+            readFloorRow(0, data, offsets, lengths, context, regionsX, size, width, height);
+
+            for(int row = 0; row < regionsY; row++){
+                if(row + 1 < regionsY){
+                    readFloorRow(row + 1, data, offsets, lengths, context, regionsX, size, width, height);
+                }
+
+                for(int x = 0; x < regionsX; x++){
+                    readBlocks(inputs[slot(row, x, regionsX)], context, x * size, row * size, size, width, height);
+                }
+
+                SaveIO.sampleLoadMemory();
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    /** @return the decode buffer of a region; rows alternate between two sets of buffers. */
+    static int slot(int row, int x, int regionsX){
+        return (row % 2) * regionsX + x;
+    }
+
+    /** Inflates a row of regions into its decode buffers, in parallel, and reads their floors. */
+    void readFloorRow(int row, byte[] data, int[] offsets, int[] lengths, WorldContext context, int regionsX, int size, int width, int height) throws IOException{
+        run(regionsX, x -> {
+            int i = row * regionsX + x, slot = slot(row, x, regionsX);
+            if(buffers[slot].length < lengths[i]){
+                buffers[slot] = new byte[lengths[i]];
+            }
+            int stored = offsets[i + 1] - offsets[i];
+            if(stored == lengths[i]){
+                System.arraycopy(data, offsets[i], buffers[slot], 0, stored);
+            }else{
+                inflate(inflaters[slot], data, offsets[i], stored, buffers[slot], lengths[i]);
+            }
+            return buffers[slot];
+        });
+
+        for(int x = 0; x < regionsX; x++){
+            int slot = slot(row, x, regionsX);
+            //bytes past the end of the region are left from earlier regions, and are never read
+            streams[slot].setBytes(buffers[slot]);
+            readFloors(inputs[slot], context, x * size, row * size, size, width, height);
+        }
+    }
+
+    /** @return total size of the decode buffers, in bytes. They are kept between loads. */
+    public long decodeBufferSize(){
+        long total = 0;
+        for(byte[] buffer : buffers){
+            total += buffer.length;
+        }
+        return total;
+    }
+
+    private void ensureBuffers(int amount){
+        if(buffers.length >= amount) return;
+
+        int last = buffers.length;
+        buffers = Arrays.copyOf(buffers, amount);
+        inflaters = Arrays.copyOf(inflaters, amount);
+        streams = Arrays.copyOf(streams, amount);
+        inputs = Arrays.copyOf(inputs, amount);
+
+        for(int i = last; i < amount; i++){
+            buffers[i] = new byte[0];
+            inflaters[i] = new Inflater();
+            streams[i] = new ReusableByteInStream();
+            inputs[i] = new DataInputStream(streams[i]);
+        }
+    }
+
+    @Override
+    public void writeEntities(DataOutput stream) throws IOException{
+        writeBlock(stream, deflate, out -> super.writeEntities(out));
+    }
+
+    @Override
+    public void readEntities(DataInput stream) throws IOException{
+        super.readEntities(readBlock(stream));
+    }
+
+    @Override
+    public boolean compressed(){
+        return true;
+    }
+
+    /** Deflates the stored map regions and entities of a save, in parallel. The meta and content regions are copied as they are. */
+    @Override
+    public byte[] compress(byte[] data) throws IOException{
+        ByteBuffer in = ByteBuffer.wrap(data);
+        //header and version
+        in.position(SaveIO.header.length + 4);
+        //meta, content
+        for(int i = 0; i < 2; i++){
+            int length = in.getInt();
+            in.position(in.position() + length);
+        }
+        int prefix = in.position();
+
+        in.getInt(); //map region length
+        int width = in.getShort() & 0xffff, height = in.getShort() & 0xffff, size = in.getShort() & 0xffff;
+        int regions = in.getInt(), total = in.getInt(), dataStart = in.position();
+        in.position(dataStart + total);
+
+        int[] offsets = new int[regions + 1], lengths = new int[regions];
+        for(int i = 0; i < regions; i++){
+            offsets[i] = dataStart + in.getInt();
+            lengths[i] = in.getInt();
+        }
+        offsets[regions] = dataStart + total;
+
+        in.getInt(); //entity region length
+        int entityLength = in.getInt(), entityStored = in.getInt(), entityStart = in.position();
+        in.position(entityStart + entityStored);
+
+        //the last task deflates the entities
+        byte[][] compressed = run(regions + 1, i -> {
+            int offset = i < regions ? offsets[i] : entityStart, stored = i < regions ? offsets[i + 1] - offsets[i] : entityStored;
+            int length = i < regions ? lengths[i] : entityLength;
+            //already deflated
+            if(stored != length) return Arrays.copyOfRange(data, offset, offset + stored);
+            return deflate(data, offset, stored);
+        });
+
+        int compressedTotal = 0;
+        for(int i = 0; i < regions; i++){
+            compressedTotal += compressed[i].length;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(prefix + compressedTotal + regions * 8 + compressed[regions].length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(data, 0, prefix);
+
+        out.writeInt(6 + 8 + compressedTotal + regions * 8);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeShort(size);
+        out.writeInt(regions);
+        out.writeInt(compressedTotal);
+        for(int i = 0; i < regions; i++){
+            out.write(compressed[i]);
+        }
+        int position = 0;
+        for(int i = 0; i < regions; i++){
+            out.writeInt(position);
+            out.writeInt(lengths[i]);
+            position += compressed[i].length;
+        }
+
+        byte[] entities = compressed[regions];
+        out.writeInt(8 + entities.length);
+        out.writeInt(entityLength);
+        out.writeInt(entities.length);
+        out.write(entities);
+
+        //anything written after the entities
+        out.write(data, in.position(), data.length - in.position());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Writes data as its uncompressed length, its stored length and the stored bytes, which are deflated when that makes them smaller. */
+    public static void writeBlock(DataOutput stream, IORunner<DataOutput> runner) throws IOException{
+        writeBlock(stream, true, runner);
+    }
+
+    public static void writeBlock(DataOutput stream, boolean deflate, IORunner<DataOutput> runner) throws IOException{
+        ReusableByteOutStream bytes = new ReusableByteOutStream();
+        runner.accept(new DataOutputStream(bytes));
+
+        byte[] stored = deflate ? deflate(bytes.getBytes(), 0, bytes.size()) : Arrays.copyOf(bytes.getBytes(), bytes.size());
+        stream.writeInt(bytes.size());
+        stream.writeInt(stored.length);
+        stream.write(stored);
+    }
+
+    /** Reads data written by {@link #writeBlock}. */
+    public static DataInputStream readBlock(DataInput stream) throws IOException{
+        int rawLength = stream.readInt();
+        byte[] stored = new byte[stream.readInt()];
+        stream.readFully(stored);
+
+        byte[] raw = stored;
+        if(stored.length != rawLength){
+            raw = new byte[rawLength];
+            Inflater inflater = new Inflater();
+            try{
+                inflate(inflater, stored, 0, stored.length, raw, rawLength);
+            }finally{
+                inflater.end();
+            }
+        }
+        return new DataInputStream(new ByteArrayInputStream(raw));
+    }
+
+    /** Same encoding as {@link SaveVersion#writeMap}, limited to the tiles of one region. */
+    void writeRegion(DataOutput stream, int rx, int ry, int width, int height) throws IOException{
+        int rw = Math.min(regionSize, width - rx), total = rw * Math.min(regionSize, height - ry);
+
+        //floor + overlay
+        for(int i = 0; i < total; i++){
+            Tile tile = world.rawTile(rx + i % rw, ry + i / rw);
+            stream.writeShort(tile.floorID());
+            stream.writeShort(tile.overlayID());
+            int consecutives = 0;
+
+            for(int j = i + 1; j < total && consecutives < 255; j++){
+                Tile nextTile = world.rawTile(rx + j % rw, ry + j / rw);
+
+                if(nextTile.floorID() != tile.floorID() || nextTile.overlayID() != tile.overlayID()){
+                    break;
+                }
+
+                consecutives++;
+            }
+
+            stream.writeByte(consecutives);
+            i += consecutives;
+        }
+
+        //blocks
+        for(int i = 0; i < total; i++){
+            Tile tile = world.rawTile(rx + i % rw, ry + i / rw);
+            stream.writeShort(tile.blockID());
+
+            boolean savedata = tile.block().saveData;
+            byte packed = (byte)((tile.build != null ? 1 : 0) | (savedata ? 2 : 0));
+
+            //make note of whether there was an entity/rotation here
+            stream.writeByte(packed);
+
+            //only write the entity for multiblocks once - in the center
+            if(tile.build != null){
+                if(tile.isCenter()){
+                    stream.writeBoolean(true);
+                    writeChunk(stream, true, out -> {
+                        out.writeByte(tile.build.version());
+                        tile.build.writeAll(Writes.get(out));
+                    });
+                }else{
+                    stream.writeBoolean(false);
+                }
+            }else if(savedata){
+                stream.writeByte(tile.data);
+            }else{
+                //write consecutive non-entity blocks
+                int consecutives = 0;
+
+                for(int j = i + 1; j < total && consecutives < 255; j++){
+                    Tile nextTile = world.rawTile(rx + j % rw, ry + j / rw);
+
+                    if(nextTile.blockID() != tile.blockID()){
+                        break;
+                    }
+
+                    consecutives++;
+                }
+
+                stream.writeByte(consecutives);
+                i += consecutives;
+            }
+        }
+    }
+
+    void readFloors(DataInput stream, WorldContext context, int rx, int ry, int size, int width, int height) throws IOException{
+        int rw = Math.min(size, width - rx), total = rw * Math.min(size, height - ry);
+
+        for(int i = 0; i < total; i++){
+            short floorid = stream.readShort();
+            short oreid = stream.readShort();
+            int consecutives = stream.readUnsignedByte();
+            if(content.block(floorid) == Blocks.air) floorid = Blocks.stone.id;
+
+            for(int j = i; j < i + 1 + consecutives; j++){
+                context.create(rx + j % rw, ry + j / rw, floorid, oreid, (short)0);
+            }
+
+            i += consecutives;
+        }
+    }
+
+    void readBlocks(DataInput stream, WorldContext context, int rx, int ry, int size, int width, int height) throws IOException{
+        int rw = Math.min(size, width - rx), total = rw * Math.min(size, height - ry);
+
+        for(int i = 0; i < total; i++){
+            Block block = content.block(stream.readShort());
+            Tile tile = context.tile(rx + i % rw + (ry + i / rw) * width);
+            if(block == null) block = Blocks.air;
+            boolean isCenter = true;
+            byte packedCheck = stream.readByte();
+            boolean hadEntity = (packedCheck & 1) != 0;
+            boolean hadData = (packedCheck & 2) != 0;
+
+            if(hadEntity){
+                isCenter = stream.readBoolean();
+            }
+
+            //set block only if this is the center; otherwise, it's handled elsewhere
+            if(isCenter){
+                tile.setBlock(block);
+            }
+
+            if(hadEntity){
+                if(isCenter){ //only read entity for center blocks
+                    if(block.hasBuilding()){
+                        try{
+                            readChunk(stream, true, in -> {
+                                byte revision = in.readByte();
+                                tile.build.readAll(Reads.get(in), revision);
+                            });
+                        }catch(Throwable e){
+                            throw new IOException("Failed to read tile entity of block: " + block, e);
+                        }
+                    }else{
+                        //skip the entity region, as the entity and its IO code are now gone
+                        skipChunk(stream, true);
+                    }
+
+                    context.onReadBuilding();
+                }
+            }else if(hadData){
+                tile.setBlock(block);
+                tile.data = stream.readByte();
+            }else{
+                int consecutives = stream.readUnsignedByte();
+
+                for(int j = i + 1; j < i + 1 + consecutives; j++){
+                    context.tile(rx + j % rw + (ry + j / rw) * width).setBlock(block);
+                }
+
+                i += consecutives;
+            }
+        }
+    }
+
+    /** @return deflated bytes, or the bytes as they are when deflating does not make them smaller. Stored data is recognized by its length. */
+    static byte[] deflate(byte[] bytes, int offset, int length){
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length / 2, 64));
+        byte[] buffer = new byte[8192];
+        while(!deflater.finished()){
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        return out.size() < length ? out.toByteArray() : Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    static void inflate(Inflater inflater, byte[] data, int offset, int length, byte[] out, int rawLength) throws IOException{
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+
+        try{
+            int read = 0;
+            while(read < rawLength && !inflater.finished()){
+                int amount = inflater.inflate(out, read, rawLength - read);
+                if(amount == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+                    throw new IOException("Region data ended early.");
+                }
+                read += amount;
+            }
+        }catch(DataFormatException e){
+            throw new IOException(e);
+        }
+    }
+
+    /** Holds the region pool, which is created on first use by class initialization; saves run on both the main and autosave threads. */
+    private static class RegionPool{
+        static final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Save Region IO");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Runs a task for every region, on the region pool when there is more than one. */
+    static byte[][] run(int regions, RegionTask task) throws IOException{
+        byte[][] result = new byte[regions][];
+
+        if(regions <= 1 || threads <= 1){
+            for(int i = 0; i < regions; i++){
+                result[i] = task.get(i);
+            }
+            return result;
+        }
+
+        ArrayList<Callable<Object>> tasks = new ArrayList<>(regions);
+        for(int i = 0; i < regions; i++){
+            int index = i;
+            tasks.add(() -> result[index] = task.get(index));
+        }
+
+        try{
+            for(Future<Object> future : RegionPool.pool.invokeAll(tasks)){
+                future.get();
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }catch(ExecutionException e){
+            throw new IOException(e.getCause());
+        }
+
+        return result;
+    }
+
+    interface RegionTask{
+        byte[] get(int region) throws IOException;
+    }
+}
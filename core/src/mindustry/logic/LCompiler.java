@@ -0,0 +1,235 @@
+package mindustry.logic;
+
+import mindustry.logic.LExecutor.*;
+
+import static mindustry.logic.LExecutor.*;
+
+/**
+ * Lowers assembled instructions into flat arrays that are run in a single loop.
+ * Variable references and jump targets are resolved ahead of time, and operations on numeric constants are folded.
+ * Instructions without a compiled form, and any instruction that touches {@code @counter}, run through {@link LInstruction#run}.
+ * Compiled instructions other than {@code op rand} only change the variables of their own processor, so they can run on any thread; see {@link Program#runPure}.
+ */
+public class LCompiler{
+    static final int
+    opFallback = 0,
+    opNoop = 1,
+    opEnd = 2,
+    opGoto = 3,
+    opJump = 4,
+    opSet = 5,
+    opSetNum = 6,
+    opBinary = 7,
+    opUnary = 8,
+    opStrictEqual = 9;
+
+    public static Program compile(LExecutor exec){
+        LInstruction[] instructions = exec.instructions;
+        Program program = new Program(instructions);
+
+        for(int i = 0; i < instructions.length; i++){
+            LInstruction inst = instructions[i];
+
+            if(inst instanceof NoopI){
+                program.ops[i] = opNoop;
+            }else if(inst instanceof EndI){
+                program.ops[i] = opEnd;
+            }else if(inst instanceof SetI set){
+                if(set.from == varCounter || set.to == varCounter) continue;
+
+                program.ops[i] = opSet;
+                program.a[i] = exec.var(set.from);
+                program.dest[i] = exec.var(set.to);
+            }else if(inst instanceof OpI op){
+                if(op.a == varCounter || op.b == varCounter || op.dest == varCounter) continue;
+
+                program.dest[i] = exec.var(op.dest);
+                program.a[i] = exec.var(op.a);
+                program.b[i] = exec.var(op.b);
+                program.logicOps[i] = op.op;
+
+                if(op.op != LogicOp.rand && folds(exec, op.a) && (op.op.unary || folds(exec, op.b))){
+                    double a = program.a[i].numval, b = program.b[i].numval;
+
+                    program.ops[i] = opSetNum;
+                    program.values[i] =
+                        op.op == LogicOp.strictEqual ? (a == b ? 1 : 0) :
+                        op.op.unary ? op.op.function1.get(num(program.a[i])) :
+                        op.op.function2.get(num(program.a[i]), num(program.b[i]));
+                }else{
+                    program.ops[i] = op.op == LogicOp.strictEqual ? opStrictEqual : op.op.unary ? opUnary : opBinary;
+                }
+            }else if(inst instanceof JumpI jump){
+                if(jump.value == varCounter || jump.compare == varCounter) continue;
+
+                program.targets[i] = jump.address;
+
+                if(jump.address == -1){
+                    program.ops[i] = opNoop;
+                }else if(jump.op == ConditionOp.always){
+                    program.ops[i] = opGoto;
+                }else if(folds(exec, jump.value) && folds(exec, jump.compare)){
+                    Var a = exec.var(jump.value), b = exec.var(jump.compare);
+                    boolean cmp = jump.op == ConditionOp.strictEqual ? a.numval == b.numval : jump.op.function.get(num(a), num(b));
+                    program.ops[i] = cmp ? opGoto : opNoop;
+                }else{
+                    program.ops[i] = opJump;
+                    program.a[i] = exec.var(jump.value);
+                    program.b[i] = exec.var(jump.compare);
+                    program.conditionOps[i] = jump.op;
+                }
+            }
+        }
+
+        for(int i = 0; i < instructions.length; i++){
+            //rand uses a shared generator
+            program.pure[i] = program.ops[i] != opFallback && program.logicOps[i] != LogicOp.rand;
+        }
+
+        return program;
+    }
+
+    /** @return whether a variable is a number that can never change. Special variables and global constants may be set while running. */
+    static boolean folds(LExecutor exec, int index){
+        if(index <= varTick) return false;
+        Var v = exec.vars[index];
+        return v.constant && !v.isobj;
+    }
+
+    static double num(Var v){
+        return v.isobj ? v.objval != null ? 1 : 0 : Double.isNaN(v.numval) || Double.isInfinite(v.numval) ? 0 : v.numval;
+    }
+
+    static void setnum(Var v, double value){
+        if(v.constant) return;
+        if(Double.isNaN(value) || Double.isInfinite(value)){
+            v.objval = null;
+            v.isobj = true;
+        }else{
+            v.numval = value;
+            v.objval = null;
+            v.isobj = false;
+        }
+    }
+
+    /** Compiled form of a list of instructions. Every array is indexed by instruction. */
+    public static class Program{
+        /** Instructions this program was compiled from; used for fallbacks. */
+        public final LInstruction[] instructions;
+
+        final int[] ops, targets;
+        final Var[] a, b, dest;
+        final double[] values;
+        /** Whether an instruction can run on another thread. */
+        final boolean[] pure;
+        final LogicOp[] logicOps;
+        final ConditionOp[] conditionOps;
+
+        Program(LInstruction[] instructions){
+            int size = instructions.length;
+            this.instructions = instructions;
+
+            ops = new int[size];
+            targets = new int[size];
+            a = new Var[size];
+            b = new Var[size];
+            dest = new Var[size];
+            values = new double[size];
+            pure = new boolean[size];
+            logicOps = new LogicOp[size];
+            conditionOps = new ConditionOp[size];
+        }
+
+        /** Runs a number of instructions. Equivalent to calling {@link LExecutor#runOnce()} that many times in the same tick. */
+        public void run(LExecutor exec, int amount){
+            run(exec, amount, false);
+        }
+
+        /**
+         * Runs instructions until the amount is reached, or the next instruction may have side effects outside of this processor.
+         * Safe to call from another thread, as long as nothing else uses this executor at the same time.
+         * @return the amount of instructions that were run.
+         */
+        public int runPure(LExecutor exec, int amount){
+            return run(exec, amount, true);
+        }
+
+        private int run(LExecutor exec, int amount, boolean pureOnly){
+            Var counterVar = exec.vars[varCounter];
+            double counter = counterVar.numval;
+            int length = ops.length, i = 0;
+
+            for(; i < amount; i++){
+                //reset to start
+                if(counter >= length || counter < 0){
+                    counter = 0;
+                }
+
+                int index = (int)counter;
+                if(pureOnly && !pure[index]) break;
+                counter++;
+
+                switch(ops[index]){
+                    case opNoop -> {}
+                    case opEnd -> counter = length;
+                    case opGoto -> counter = targets[index];
+                    case opJump -> {
+                        Var va = a[index], vb = b[index];
+                        ConditionOp op = conditionOps[index];
+                        boolean cmp;
+
+                        if(op == ConditionOp.strictEqual){
+                            cmp = va.isobj == vb.isobj && ((va.isobj && va.objval == vb.objval) || (!va.isobj && va.numval == vb.numval));
+                        }else if(op.objFunction != null && va.isobj && vb.isobj){
+                            cmp = op.objFunction.get(va.objval, vb.objval);
+                        }else{
+                            cmp = op.function.get(num(va), num(vb));
+                        }
+
+                        if(cmp){
+                            counter = targets[index];
+                        }
+                    }
+                    case opSet -> {
+                        Var v = dest[index], f = a[index];
+
+                        if(!v.constant){
+                            if(f.isobj){
+                                v.objval = f.objval;
+                                v.isobj = true;
+                            }else{
+                                v.numval = Double.isNaN(f.numval) || Double.isInfinite(f.numval) ? 0 : f.numval;
+                                v.isobj = false;
+                            }
+                        }
+                    }
+                    case opSetNum -> setnum(dest[index], values[index]);
+                    case opBinary -> {
+                        Var va = a[index], vb = b[index];
+                        LogicOp op = logicOps[index];
+
+                        if(op.objFunction2 != null && va.isobj && vb.isobj){
+                            setnum(dest[index], op.objFunction2.get(va.objval, vb.objval));
+                        }else{
+                            setnum(dest[index], op.function2.get(num(va), num(vb)));
+                        }
+                    }
+                    case opUnary -> setnum(dest[index], logicOps[index].function1.get(num(a[index])));
+                    case opStrictEqual -> {
+                        Var va = a[index], vb = b[index];
+                        setnum(dest[index], va.isobj == vb.isobj && ((va.isobj && va.objval == vb.objval) || (!va.isobj && va.numval == vb.numval)) ? 1 : 0);
+                    }
+                    default -> {
+                        //the instruction may read or change the counter
+                        counterVar.numval = counter;
+                        instructions[index].run(exec);
+                        counter = counterVar.numval;
+                    }
+                }
+            }
+
+            counterVar.numval = counter;
+            return i;
+        }
+    }
+}
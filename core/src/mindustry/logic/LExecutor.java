@@ -36,6 +36,9 @@ public class LExecutor{
     varThis = 3,
     varTick = 4;
 
+    /** Whether loaded programs are compiled, see {@link LCompiler}. When false, every instruction is interpreted. */
+    public static boolean compile = true;
+
     public static final int
     maxGraphicsBuffer = 256,
     maxDisplayBuffer = 1024,
@@ -44,6 +47,8 @@ public class LExecutor{
     public LInstruction[] instructions = {};
     public Var[] vars = {};
     public int[] binds;
+    /** Compiled form of the instructions, or null if compilation is disabled. */
+    public @Nullable LCompiler.Program program;
 
     public LongSeq graphicsBuffer = new LongSeq();
     public StringBuilder textBuffer = new StringBuilder();
@@ -57,11 +62,44 @@ public class LExecutor{
 
     /** Runs a single instruction. */
     public void runOnce(){
+        updateTime();
+        step();
+    }
+
+    /** Runs several instructions. @time and @tick are only updated once, as they cannot change in between. */
+    public void run(int amount){
+        updateTime();
+
+        //the compiled program is only valid for the instructions it was built from
+        if(program != null && program.instructions == instructions){
+            program.run(this, amount);
+        }else{
+            for(int i = 0; i < amount; i++){
+                step();
+            }
+        }
+    }
+
+    /**
+     * Runs instructions that only affect this processor, stopping before the first one that may have other effects.
+     * Can be called from any thread, as long as nothing else uses this executor at the same time.
+     * @return the amount of instructions that were run.
+     */
+    public int runPure(int amount){
+        if(program == null || program.instructions != instructions) return 0;
+
+        updateTime();
+        return program.runPure(this, amount);
+    }
+
+    private void updateTime(){
         //set up time; note that @time is now only updated once every invocation and directly based off of @tick.
         //having time be based off of user system time was a very bad idea.
         vars[varTime].numval = state.tick / 60.0 * 1000.0;
         vars[varTick].numval = state.tick;
+    }
 
+    private void step(){
         //reset to start
         if(vars[varCounter].numval >= instructions.length || vars[varCounter].numval < 0){
             vars[varCounter].numval = 0;
@@ -95,6 +133,8 @@ public class LExecutor{
                 dest.objval = var.value;
             }
         });
+
+        program = compile && instructions.length > 0 ? LCompiler.compile(this) : null;
     }
 
     //region utility
@@ -273,7 +313,7 @@ public class LExecutor{
                             }
                         }
                         case building -> {
-                            res = Geometry.findClosest(unit.x, unit.y, exec.bool(enemy) ? indexer.getEnemy(unit.team, flag) : indexer.getAllied(unit.team, flag));
+                            res = exec.bool(enemy) ? indexer.findClosestEnemyFlag(unit.x, unit.y, unit.team, flag) : indexer.findClosestFlag(unit.x, unit.y, unit.team, flag);
                             build = true;
                         }
                         case spawn -> {
@@ -47,7 +47,9 @@ public class Maps{
     private ShuffleMode shuffleMode = ShuffleMode.all;
     private @Nullable MapProvider shuffler;
 
-    private ExecutorService executor = Threads.executor(3);
+    /** Runs preview writes, and reads of map and save metadata. */
+    public final ExecutorService executor = Threads.executor(3);
+    private @Nullable MetaIndex index;
     private ObjectSet<Map> previewList = new ObjectSet<>();
 
     public ShuffleMode getShuffleMode(){
@@ -122,17 +124,24 @@ public class Maps{
             throw new RuntimeException(e);
         }
 
-        //custom
-        for(Fi file : customMapDirectory.list()){
+        //custom; only files that changed since the last load are read, in parallel
+        Seq<Fi> files = Seq.with(customMapDirectory.list()).select(f -> f.extension().equalsIgnoreCase(mapExtension));
+        MetaIndex.Entry[] entries = index().resolve(files, executor);
+
+        for(int i = 0; i < files.size; i++){
+            Fi file = files.get(i);
+            MetaIndex.Entry entry = entries[i];
+            if(entry == null) continue;
+
             try{
-                if(file.extension().equalsIgnoreCase(mapExtension)){
-                    loadMap(file, true);
-                }
+                StringMap tags = new StringMap(entry.tags);
+                addMap(new Map(file, tags.getInt("width"), tags.getInt("height"), tags, true, entry.version, Version.build));
             }catch(Exception e){
                 Log.err("Failed to load custom map file '@'!", file);
                 Log.err(e);
             }
         }
+        maps.sort();
 
         //workshop
         for(Fi file : platform.getWorkshopContent(Map.class)){
@@ -463,15 +472,26 @@ public class Maps{
         return customMapDirectory.child("map_" + i + "." + mapExtension);
     }
 
+    /** @return the metadata index of the custom map directory. */
+    public MetaIndex index(){
+        if(index == null || !index.directory.equals(customMapDirectory)){
+            index = new MetaIndex(customMapDirectory);
+        }
+        return index;
+    }
+
     private Map loadMap(Fi file, boolean custom) throws IOException{
-        Map map = MapIO.createMap(file, custom);
+        Map map = addMap(MapIO.createMap(file, custom));
+        maps.sort();
+        return map;
+    }
 
+    private Map addMap(Map map) throws IOException{
         if(map.name() == null){
-            throw new IOException("Map name cannot be empty! File: " + file);
+            throw new IOException("Map name cannot be empty! File: " + map.file);
         }
 
         maps.add(map);
-        maps.sort();
         return map;
     }
 
@@ -189,10 +189,10 @@ public class SectorDamage{
         Seq<Tile> path = new Seq<>();
         boolean found = false;
 
-        if(field != null && field.weights != null){
-            int[][] weights = field.weights;
+        if(field != null && field.hasWeights()){
             int count = 0;
             Tile current = start;
+            outer:
             while(count < world.width() * world.height()){
                 int minCost = Integer.MAX_VALUE;
                 int cx = current.x, cy = current.y;
@@ -200,8 +200,17 @@ public class SectorDamage{
                     int nx = cx + p.x, ny = cy + p.y;
 
                     Tile other = world.tile(nx, ny);
-                    if(other != null && weights[nx][ny] < minCost && weights[nx][ny] != -1){
-                       minCost = weights[nx][ny];
+                    if(other == null) continue;
+
+                    //weights of large maps are only computed near units; fall back to A* when the path leaves them
+                    if(!field.hasWeight(nx, ny)){
+                        field.request(nx, ny);
+                        break outer;
+                    }
+
+                    int weight = field.weight(nx, ny);
+                    if(weight < minCost && weight != -1){
+                       minCost = weight;
                        current = other;
                     }
                 }
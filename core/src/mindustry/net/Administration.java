@@ -480,6 +480,9 @@ public class Administration{
         autosave("Whether the periodically save the map when playing.", false),
         autosaveAmount("The maximum amount of autosaves. Older ones get replaced.", 10),
         autosaveSpacing("Spacing between autosaves in seconds.", 60 * 5),
+        pathfinderThreads("Amount of threads used to calculate unit flow fields. 0 to pick automatically. Applied on the next map load.", 0),
+        deltaSnapshots("Whether entity snapshots only contain the data that changed since the last snapshot acknowledged by the client.", false),
+        interestRadius("Radius in tiles around each player's view in which entities are synced. 0 to sync all entities.", 0),
         debug("Enable debug logging", false, () -> Log.level = debug() ? LogLevel.debug : LogLevel.info);
 
         public static final Config[] all = values();
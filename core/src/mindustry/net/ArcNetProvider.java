@@ -12,6 +12,7 @@ import arc.util.async.*;
 import arc.util.io.*;
 import mindustry.net.Net.*;
 import mindustry.net.Packets.*;
+import mindustry.net.Streamable.*;
 import net.jpountz.lz4.*;
 
 import java.io.*;
@@ -23,6 +24,9 @@ import java.util.concurrent.*;
 import static mindustry.Vars.*;
 
 public class ArcNetProvider implements NetProvider{
+    /** Size of the write buffer of server connections. */
+    static final int writeBufferSize = 32768;
+
     final Client client;
     final Prov<DatagramPacket> packetSupplier = () -> new DatagramPacket(new byte[512], 512);
     final AsyncExecutor executor = new AsyncExecutor(Math.max(Runtime.getRuntime().availableProcessors(), 6));
@@ -79,7 +83,7 @@ public class ArcNetProvider implements NetProvider{
             }
         });
 
-        server = new Server(32768, 8192, new PacketSerializer());
+        server = new Server(writeBufferSize, 8192, new PacketSerializer());
         server.setMulticast(multicastGroup, multicastPort);
         server.setDiscoveryHandler((address, handler) -> {
             ByteBuffer buffer = NetworkIO.writeServerData();
@@ -278,6 +282,56 @@ public class ArcNetProvider implements NetProvider{
         return null;
     }
 
+    /**
+     * Sends a stream in large chunks that point into the array the stream was written to, so no bytes are copied before serialization.
+     * Chunks are only queued while the write buffer has room for a whole chunk; the rest follows whenever the connection is idle again.
+     */
+    static class StreamSender implements NetListener{
+        /** Stream bytes per chunk. Chunks, with their headers, have to fit in the object buffer of the client. */
+        static final int chunkSize = 8000;
+        /** Bytes that can wait in the write buffer before no more chunks are queued. */
+        static final int window = writeBufferSize - chunkSize - 64;
+
+        final Streamable stream;
+        StreamBytes bytes;
+        int id;
+
+        StreamSender(Streamable stream){
+            this.stream = stream;
+        }
+
+        @Override
+        public void idle(Connection connection){
+            if(bytes == null){
+                if(stream.stream instanceof StreamBytes b){
+                    bytes = b;
+                }else{
+                    //streams that do not expose their array are copied once
+                    byte[] copy = new byte[stream.stream.available()];
+                    stream.stream.read(copy, 0, copy.length);
+                    bytes = new StreamBytes(copy, 0, copy.length);
+                }
+
+                //send an object so the receiving side knows how to handle the following chunks
+                StreamBegin begin = new StreamBegin();
+                begin.total = bytes.available();
+                begin.type = Net.getPacketId(stream);
+                connection.sendTCP(begin);
+                id = begin.id;
+            }
+
+            while(bytes.available() > 0 && connection.getTcpWriteBufferSize() <= window){
+                int length = Math.min(chunkSize, bytes.available());
+                connection.sendTCP(new StreamChunk(id, bytes.bytes(), bytes.position(), length));
+                bytes.advance(length);
+            }
+
+            if(bytes.available() <= 0){
+                connection.removeListener(this);
+            }
+        }
+    }
+
     class ArcConnection extends NetConnection{
         public final Connection connection;
 
@@ -293,27 +347,7 @@ public class ArcNetProvider implements NetProvider{
 
         @Override
         public void sendStream(Streamable stream){
-            connection.addListener(new InputStreamSender(stream.stream, 512){
-                int id;
-
-                @Override
-                protected void start(){
-                    //send an object so the receiving side knows how to handle the following chunks
-                    StreamBegin begin = new StreamBegin();
-                    begin.total = stream.stream.available();
-                    begin.type = Net.getPacketId(stream);
-                    connection.sendTCP(begin);
-                    id = begin.id;
-                }
-
-                @Override
-                protected Object next(byte[] bytes){
-                    StreamChunk chunk = new StreamChunk();
-                    chunk.id = id;
-                    chunk.data = bytes;
-                    return chunk; //wrap the byte[] with an object so the receiving side knows how to handle it.
-                }
-            });
+            connection.addListener(new StreamSender(stream));
         }
 
         @Override
@@ -410,6 +444,14 @@ public class ArcNetProvider implements NetProvider{
             }else if(o instanceof FrameworkMessage msg){
                 byteBuffer.put((byte)-2); //code for framework message
                 writeFramework(byteBuffer, msg);
+            }else if(o instanceof StreamChunk chunk){
+                //write the chunk straight from its array, in the same layout as StreamChunk#write; chunks do not compress well
+                byteBuffer.put(Net.getPacketId(chunk));
+                byteBuffer.putShort((short)(6 + chunk.length));
+                byteBuffer.put((byte)0); //0 = no compression
+                byteBuffer.putInt(chunk.id);
+                byteBuffer.putShort((short)chunk.length);
+                byteBuffer.put(chunk.data, chunk.offset, chunk.length);
             }else{
                 if(!(o instanceof Packet pack)) throw new RuntimeException("All sent objects must implement be Packets! Class: " + o.getClass());
                 byte id = Net.getPacketId(pack);
@@ -426,7 +468,7 @@ public class ArcNetProvider implements NetProvider{
                 byteBuffer.putShort(length);
 
                 //don't bother with small packets
-                if(length < 36 || pack instanceof StreamChunk){
+                if(length < 36){
                     //write direct contents...
                     byteBuffer.put((byte)0); //0 = no compression
                     byteBuffer.put(temp.array(), 0, length);
@@ -271,7 +271,7 @@ public class Net{
             if(builder == null){
                 throw new RuntimeException("Received stream chunk without a StreamBegin beforehand!");
             }
-            builder.add(c.data);
+            builder.add(c.data, c.offset, c.length);
 
             ui.loadfrag.setProgress(builder.progress());
             ui.loadfrag.snapProgress();
@@ -5,6 +5,7 @@ import arc.util.*;
 import mindustry.entities.units.*;
 import mindustry.gen.*;
 import mindustry.net.Packets.*;
+import mindustry.net.Streamable.*;
 
 import java.io.*;
 
@@ -26,6 +27,10 @@ public abstract class NetConnection{
     public int snapshotsSent;
     /** Timestamp of last received snapshot. */
     public long lastReceivedClientTime;
+    /** IDs of entities that were sent in the last entity snapshot, when area of interest syncing is enabled. */
+    public IntSet syncedEntities = new IntSet(), lastSyncedEntities = new IntSet();
+    /** Entity states used for delta-encoding entity snapshots. */
+    public SnapshotBaselines baselines = new SnapshotBaselines();
     /** Build requests that have been recently rejected. This is cleared every snapshot. */
     public Seq<BuildPlan> rejectedRequests = new Seq<>();
 
@@ -91,14 +96,20 @@ public abstract class NetConnection{
             send(begin, true);
             cid = begin.id;
 
-            while(stream.stream.available() > 0){
-                byte[] bytes = new byte[Math.min(maxTcpSize, stream.stream.available())];
-                stream.stream.read(bytes);
-
-                StreamChunk chunk = new StreamChunk();
-                chunk.id = cid;
-                chunk.data = bytes;
-                send(chunk, true);
+            if(stream.stream instanceof StreamBytes bytes){
+                //chunks point into the stream's array
+                while(bytes.available() > 0){
+                    int length = Math.min(maxTcpSize, bytes.available());
+                    send(new StreamChunk(cid, bytes.bytes(), bytes.position(), length), true);
+                    bytes.advance(length);
+                }
+            }else{
+                while(stream.stream.available() > 0){
+                    byte[] bytes = new byte[Math.min(maxTcpSize, stream.stream.available())];
+                    stream.stream.read(bytes);
+
+                    send(new StreamChunk(cid, bytes, 0, bytes.length), true);
+                }
             }
         }catch(IOException e){
             throw new RuntimeException(e);
@@ -9,6 +9,7 @@ import mindustry.ctype.*;
 import mindustry.game.*;
 import mindustry.gen.*;
 import mindustry.io.*;
+import mindustry.io.versions.*;
 import mindustry.logic.*;
 import mindustry.maps.Map;
 import mindustry.net.Administration.*;
@@ -21,64 +22,104 @@ import static mindustry.Vars.*;
 
 public class NetworkIO{
 
+    /**
+     * Writes the world data sent to a joining player.
+     * The data contains the player, the game state, the map and the team blocks. Only the map is expensive to write, and can be shared
+     * between players; see {@link #writeWorldMap(OutputStream)}.
+     */
     public static void writeWorld(Player player, OutputStream os){
+        try{
+            ByteArrayOutputStream map = new ByteArrayOutputStream();
+            writeWorldMap(map);
+            writeWorld(player, map.toByteArray(), os);
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
+    }
 
-        try(DataOutputStream stream = new DataOutputStream(os)){
-            //write all researched content to rules if hosting
-            if(state.isCampaign()){
-                state.rules.researched.clear();
-                for(ContentType type : ContentType.all){
-                    for(Content c : content.getBy(type)){
-                        if(c instanceof UnlockableContent u && u.unlocked() && TechTree.get(u) != null){
-                            state.rules.researched.add(u.name);
-                        }
+    /** Writes the world data sent to a joining player, with a map that was written before. */
+    public static void writeWorld(Player player, byte[] map, OutputStream os) throws IOException{
+        ReusableByteOutStream bytes = new ReusableByteOutStream();
+        DataOutputStream section = new DataOutputStream(bytes);
+        section.writeInt(player.id);
+        player.write(Writes.get(section));
+
+        DataOutputStream stream = new DataOutputStream(os);
+        stream.writeInt(bytes.size());
+        stream.write(bytes.getBytes(), 0, bytes.size());
+
+        //write all researched content to rules if hosting
+        if(state.isCampaign()){
+            state.rules.researched.clear();
+            for(ContentType type : ContentType.all){
+                for(Content c : content.getBy(type)){
+                    if(c instanceof UnlockableContent u && u.unlocked() && TechTree.get(u) != null){
+                        state.rules.researched.add(u.name);
                     }
                 }
             }
+        }
 
-            stream.writeUTF(JsonIO.write(state.rules));
-            SaveIO.getSaveWriter().writeStringMap(stream, state.map.tags);
-
-            stream.writeInt(state.wave);
-            stream.writeFloat(state.wavetime);
-            stream.writeDouble(state.tick);
-            stream.writeLong(GlobalConstants.rand.seed0);
-            stream.writeLong(GlobalConstants.rand.seed1);
-
-            stream.writeInt(player.id);
-            player.write(Writes.get(stream));
+        Save6.writeBlock(stream, out -> {
+            out.writeUTF(JsonIO.write(state.rules));
+            SaveIO.getSaveWriter().writeStringMap(out, state.map.tags);
+
+            out.writeInt(state.wave);
+            out.writeFloat(state.wavetime);
+            out.writeDouble(state.tick);
+            out.writeLong(GlobalConstants.rand.seed0);
+            out.writeLong(GlobalConstants.rand.seed1);
+
+            SaveIO.getSaveWriter().writeContentHeader(out);
+        });
+        stream.write(map);
+        Save6.writeBlock(stream, out -> SaveIO.getSaveWriter().writeTeamBlocks(out));
+        stream.flush();
+    }
 
-            SaveIO.getSaveWriter().writeContentHeader(stream);
-            SaveIO.getSaveWriter().writeMap(stream);
-            SaveIO.getSaveWriter().writeTeamBlocks(stream);
+    /**
+     * Writes the map part of the world data, which is the same for every player. The stream is closed afterwards.
+     * The map regions are compressed in parallel by the save version.
+     */
+    public static void writeWorldMap(OutputStream os){
+        try(DataOutputStream stream = new DataOutputStream(os)){
+            writeMap(stream);
         }catch(IOException e){
             throw new RuntimeException(e);
         }
     }
 
+    /** Loads world data written by {@link #writeWorld(Player, OutputStream)}. */
     public static void loadWorld(InputStream is){
 
-        try(DataInputStream stream = new DataInputStream(is)){
-            Time.clear();
-            state.setRules(JsonIO.read(Rules.class, stream.readUTF()));
-            state.setMap(new Map(SaveIO.getSaveWriter().readStringMap(stream)));
-
-            state.setWave(stream.readInt());
-            state.setWavetime(stream.readFloat());
-            state.setTick(stream.readDouble());
-            GlobalConstants.rand.seed0 = stream.readLong();
-            GlobalConstants.rand.seed1 = stream.readLong();
-
-            Groups.clear();
-            int id = stream.readInt();
-            player.reset();
-            player.read(Reads.get(stream));
-            player.id = id;
-            player.add();
-
-            SaveIO.getSaveWriter().readContentHeader(stream);
-            SaveIO.getSaveWriter().readMap(stream, world.context);
-            SaveIO.getSaveWriter().readTeamBlocks(stream);
+        try{
+            DataInputStream raw = new DataInputStream(is);
+            byte[] playerData = new byte[raw.readInt()];
+            raw.readFully(playerData);
+
+            try(DataInputStream stream = Save6.readBlock(raw)){
+                Time.clear();
+                state.setRules(JsonIO.read(Rules.class, stream.readUTF()));
+                state.setMap(new Map(SaveIO.getSaveWriter().readStringMap(stream)));
+
+                state.setWave(stream.readInt());
+                state.setWavetime(stream.readFloat());
+                state.setTick(stream.readDouble());
+                GlobalConstants.rand.seed0 = stream.readLong();
+                GlobalConstants.rand.seed1 = stream.readLong();
+
+                Groups.clear();
+                DataInputStream playerStream = new DataInputStream(new ByteArrayInputStream(playerData));
+                int id = playerStream.readInt();
+                player.reset();
+                player.read(Reads.get(playerStream));
+                player.id = id;
+                player.add();
+
+                SaveIO.getSaveWriter().readContentHeader(stream);
+            }
+            readMap(raw);
+            SaveIO.getSaveWriter().readTeamBlocks(Save6.readBlock(raw));
         }catch(IOException e){
             throw new RuntimeException(e);
         }finally{
@@ -86,6 +127,21 @@ public class NetworkIO{
         }
     }
 
+    /** Writes the map with the current save version, deflated as a block if the version does not compress it itself. */
+    static void writeMap(DataOutputStream stream) throws IOException{
+        SaveVersion ver = SaveIO.getSaveWriter();
+        if(ver.compressed()){
+            ver.writeMap(stream);
+        }else{
+            Save6.writeBlock(stream, ver::writeMap);
+        }
+    }
+
+    static void readMap(DataInputStream stream) throws IOException{
+        SaveVersion ver = SaveIO.getSaveWriter();
+        ver.readMap(ver.compressed() ? stream : Save6.readBlock(stream), world.context);
+    }
+
     public static ByteBuffer writeServerData(){
         String name = (headless ? Config.name.string() : player.name);
         String description = headless && !Config.desc.string().equals("off") ? Config.desc.string() : "";
@@ -93,18 +93,32 @@ public class Packets{
     public static class StreamChunk extends Packet{
         public int id;
         public byte[] data;
+        /** Range of {@link #data} that this chunk holds. Chunks that are sent can point into the array of the whole stream, instead of copying it. */
+        public int offset, length;
+
+        public StreamChunk(){
+        }
+
+        public StreamChunk(int id, byte[] data, int offset, int length){
+            this.id = id;
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
 
         @Override
         public void write(Writes buffer){
             buffer.i(id);
-            buffer.s((short)data.length);
-            buffer.b(data);
+            buffer.s((short)length);
+            buffer.b(data, offset, length);
         }
 
         @Override
         public void read(Reads buffer){
             id = buffer.i();
             data = buffer.b(buffer.s());
+            offset = 0;
+            length = data.length;
         }
     }
 
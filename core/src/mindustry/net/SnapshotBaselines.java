@@ -0,0 +1,246 @@
+package mindustry.net;
+
+import arc.struct.*;
+
+import java.io.*;
+
+/**
+ * Keeps track of the entity states exchanged over a single connection, so that entity snapshots can be delta-encoded.
+ * States are the raw output of {@code writeSync}. A delta marks every changed 4-byte word of the state in a bitmask, and only those words are sent.
+ * Deltas are always relative to a state the client has acknowledged receiving, identified by its snapshot sequence number.
+ */
+public class SnapshotBaselines{
+    /** Amount of states stored for each entity. Must be the same on both sides. */
+    public static final int historySize = 4;
+    /** Acknowledged states older than this amount of snapshots are not used as baselines. */
+    public static final int maxBaselineAge = 64;
+    /** Amount of most recently sent snapshots that can still be acknowledged. */
+    public static final int ackWindow = 64;
+
+    static final byte typeFull = 0, typeDelta = 1;
+
+    private final IntMap<History> histories = new IntMap<>();
+    /** Entity IDs written to the last few snapshots, indexed by sequence. Only used on the server. */
+    private final IntSeq[] sentEntities = new IntSeq[ackWindow];
+    private final IntSeq tmpRemove = new IntSeq();
+
+    /** Sequence of the last snapshot that was sent or received. */
+    private int sequence = -1, lastPrune;
+    /** Client-side acknowledgement state. Bit N of the mask is set when snapshot (lastReceived - 1 - N) was received completely. */
+    private int lastReceived = -1, receivedMask;
+
+    public SnapshotBaselines(){
+        for(int i = 0; i < ackWindow; i++){
+            sentEntities[i] = new IntSeq();
+        }
+    }
+
+    /** Clears all stored states. The sequence counter keeps going, so that stale acknowledgements are never matched to new snapshots. */
+    public void reset(){
+        histories.clear();
+        for(IntSeq seq : sentEntities){
+            seq.clear();
+        }
+        lastReceived = -1;
+        receivedMask = 0;
+    }
+
+    /** Server-side: begins a new snapshot and returns its sequence number. */
+    public int nextSequence(){
+        sequence++;
+        sentEntities[sequence % ackWindow].clear();
+        checkPrune();
+
+        return sequence;
+    }
+
+    /** Server-side: writes an entity state to the current snapshot, as a delta if an acknowledged baseline exists. */
+    public void write(DataOutputStream out, int id, byte[] state) throws IOException{
+        History history = histories.get(id);
+        if(history == null){
+            histories.put(id, history = new History());
+        }
+
+        byte[] base = history.acked >= 0 && sequence - history.acked < maxBaselineAge ? history.get(history.acked) : null;
+
+        if(base != null && base.length == state.length){
+            out.writeByte(typeDelta);
+            out.writeInt(history.acked);
+            writeDelta(out, base, state);
+        }else{
+            out.writeByte(typeFull);
+            out.writeShort(state.length);
+            out.write(state);
+        }
+
+        history.add(sequence, state);
+        sentEntities[sequence % ackWindow].add(id);
+    }
+
+    /** Server-side: handles an acknowledgement sent by the client. */
+    public void acknowledge(int last, int mask){
+        if(last < 0) return;
+
+        ackSnapshot(last);
+        for(int i = 0; i < 32; i++){
+            if((mask & (1 << i)) != 0){
+                ackSnapshot(last - 1 - i);
+            }
+        }
+    }
+
+    private void ackSnapshot(int seq){
+        //snapshots that are too old have had their entity lists overwritten
+        if(seq < 0 || seq > sequence || sequence - seq >= ackWindow) return;
+
+        IntSeq ids = sentEntities[seq % ackWindow];
+        for(int i = 0; i < ids.size; i++){
+            History history = histories.get(ids.items[i]);
+            if(history != null && seq > history.acked && history.get(seq) != null){
+                history.acked = seq;
+            }
+        }
+    }
+
+    /**
+     * Client-side: reads an entity state written with {@link #write}.
+     * @return the full state, or null if it could not be decoded or is older than the last state received for this entity.
+     */
+    public byte[] read(DataInputStream in, int id, int seq) throws IOException{
+        History history = histories.get(id);
+        byte type = in.readByte();
+        byte[] state;
+
+        if(type == typeDelta){
+            int baseSeq = in.readInt();
+            state = readDelta(in, history == null ? null : history.get(baseSeq));
+        }else{
+            state = new byte[in.readUnsignedShort()];
+            in.readFully(state);
+        }
+
+        if(state == null || (history != null && seq <= history.newest)){
+            return null;
+        }
+
+        if(history == null){
+            histories.put(id, history = new History());
+        }
+        history.add(seq, state);
+        return state;
+    }
+
+    /** Client-side: marks a snapshot as received. Only snapshots where every state was decoded should be marked. */
+    public void received(int seq){
+        if(seq > sequence){
+            sequence = seq;
+            checkPrune();
+        }
+
+        if(lastReceived < 0){
+            lastReceived = seq;
+            receivedMask = 0;
+        }else if(seq > lastReceived){
+            int shift = seq - lastReceived;
+            receivedMask = shift > 32 ? 0 : (shift == 32 ? 0 : receivedMask << shift) | (1 << (shift - 1));
+            lastReceived = seq;
+        }else if(seq < lastReceived && lastReceived - seq <= 32){
+            receivedMask |= 1 << (lastReceived - seq - 1);
+        }
+    }
+
+    /** Client-side: @return the last completely received snapshot. */
+    public int lastReceived(){
+        return lastReceived;
+    }
+
+    /** Client-side: @return bitmask of the 32 snapshots preceding {@link #lastReceived()} that were completely received. */
+    public int receivedMask(){
+        return receivedMask;
+    }
+
+    private void checkPrune(){
+        if(sequence - lastPrune >= ackWindow){
+            lastPrune = sequence;
+            prune(sequence - maxBaselineAge * 2);
+        }
+    }
+
+    /** Removes the histories of entities that have not been synced since the specified sequence. */
+    private void prune(int minSequence){
+        tmpRemove.clear();
+        for(var entry : histories){
+            if(entry.value.newest < minSequence){
+                tmpRemove.add(entry.key);
+            }
+        }
+        for(int i = 0; i < tmpRemove.size; i++){
+            histories.remove(tmpRemove.items[i]);
+        }
+    }
+
+    static void writeDelta(DataOutputStream out, byte[] base, byte[] state) throws IOException{
+        int words = (state.length + 3) / 4;
+        out.writeShort(state.length);
+
+        //changed word mask, 8 words per byte
+        for(int i = 0; i < words; i += 8){
+            int bits = 0;
+            for(int w = i; w < Math.min(i + 8, words); w++){
+                if(changed(base, state, w)) bits |= 1 << (w - i);
+            }
+            out.writeByte(bits);
+        }
+
+        for(int w = 0; w < words; w++){
+            if(changed(base, state, w)){
+                out.write(state, w * 4, Math.min(4, state.length - w * 4));
+            }
+        }
+    }
+
+    /** Reads a delta. When the base is null, the data is skipped and null is returned. */
+    static byte[] readDelta(DataInputStream in, byte[] base) throws IOException{
+        int length = in.readUnsignedShort(), words = (length + 3) / 4;
+        byte[] mask = new byte[(words + 7) / 8];
+        in.readFully(mask);
+
+        boolean valid = base != null && base.length == length;
+        byte[] state = valid ? base.clone() : new byte[length];
+
+        for(int w = 0; w < words; w++){
+            if((mask[w / 8] & (1 << (w % 8))) != 0){
+                in.readFully(state, w * 4, Math.min(4, length - w * 4));
+            }
+        }
+
+        return valid ? state : null;
+    }
+
+    static boolean changed(byte[] base, byte[] state, int word){
+        for(int i = word * 4; i < Math.min(word * 4 + 4, state.length); i++){
+            if(base[i] != state[i]) return true;
+        }
+        return false;
+    }
+
+    static class History{
+        final int[] sequences = new int[historySize];
+        final byte[][] states = new byte[historySize][];
+        int next, newest = -1, acked = -1;
+
+        void add(int seq, byte[] state){
+            sequences[next] = seq;
+            states[next] = state;
+            next = (next + 1) % historySize;
+            newest = seq;
+        }
+
+        byte[] get(int seq){
+            for(int i = 0; i < historySize; i++){
+                if(states[i] != null && sequences[i] == seq) return states[i];
+            }
+            return null;
+        }
+    }
+}
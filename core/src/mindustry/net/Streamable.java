@@ -3,6 +3,7 @@ package mindustry.net;
 import mindustry.net.Packets.*;
 
 import java.io.*;
+import java.util.*;
 
 public class Streamable extends Packet{
     public transient ByteArrayInputStream stream;
@@ -12,38 +13,76 @@ public class Streamable extends Packet{
         return priorityHigh;
     }
 
+    /** Input stream over an array, which gives access to the bytes that are left, so they can be sent in chunks without copying. */
+    public static class StreamBytes extends ByteArrayInputStream{
+
+        public StreamBytes(byte[] bytes, int offset, int length){
+            super(bytes, offset, length);
+        }
+
+        /** @return the array that is read from; bytes that are left start at {@link #position()}. */
+        public byte[] bytes(){
+            return buf;
+        }
+
+        public int position(){
+            return pos;
+        }
+
+        /** Moves the stream forward without reading, e.g. after the bytes have been sent. */
+        public void advance(int amount){
+            pos = Math.min(pos + amount, count);
+        }
+    }
+
+    /**
+     * Reassembles a stream into an array sized by the total announced by {@link StreamBegin}.
+     * The announced size is not trusted beyond {@link #maxPreallocation}; larger streams grow their array as data arrives.
+     */
     public static class StreamBuilder{
+        /** Maximum amount of bytes allocated before any data is received. Large enough for the world data of very large maps. */
+        public static final int maxPreallocation = 16 * 1024 * 1024;
+
         public final int id;
         public final byte type;
         public final int total;
-        public final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        private byte[] bytes;
+        private int size;
 
         public StreamBuilder(StreamBegin begin){
             id = begin.id;
             type = begin.type;
             total = begin.total;
+            bytes = new byte[Math.min(Math.max(total, 0), maxPreallocation)];
         }
 
         public float progress(){
-            return (float)stream.size() / total;
+            return total == 0 ? 1f : (float)size / total;
         }
 
-        public void add(byte[] bytes){
-            try{
-                stream.write(bytes);
-            }catch(IOException e){
-                throw new RuntimeException(e);
+        public void add(byte[] data){
+            add(data, 0, data.length);
+        }
+
+        public void add(byte[] data, int offset, int length){
+            if(size + length > total){
+                throw new RuntimeException("Stream " + id + " received more than the " + total + " bytes it announced.");
+            }
+            if(size + length > bytes.length){
+                bytes = Arrays.copyOf(bytes, (int)Math.min(total, Math.max(size + length, bytes.length * 2L)));
             }
+            System.arraycopy(data, offset, bytes, size, length);
+            size += length;
         }
 
         public Streamable build(){
             Streamable s = Net.newPacket(type);
-            s.stream = new ByteArrayInputStream(stream.toByteArray());
+            s.stream = new StreamBytes(bytes, 0, size);
             return s;
         }
 
         public boolean isDone(){
-            return stream.size() >= total;
+            return size >= total;
         }
     }
 }
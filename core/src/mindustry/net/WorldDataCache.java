@@ -0,0 +1,58 @@
+package mindustry.net;
+
+import arc.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+
+import java.io.*;
+
+/**
+ * Keeps the written map of the world data, so that players who join in the same frame do not each compress the whole map.
+ * The map is only reused within the frame it was written in, and is thrown away as soon as a tile or configuration changes, or a new world loads.
+ * The game state and team blocks are written for every player; see {@link NetworkIO#writeWorld(Player, byte[], OutputStream)}.
+ */
+public class WorldDataCache{
+    /** Amount of joins that reused the cached map, or had to write it. */
+    public int hits, misses;
+    /** Time saved by cache hits, in milliseconds. */
+    public float savedTime;
+
+    private @Nullable byte[] map;
+    private long frame = -1;
+    /** Time it took to write the cached map, in milliseconds. */
+    private float writeTime;
+
+    public WorldDataCache(){
+        Events.on(WorldLoadEvent.class, e -> clear());
+        Events.on(ResetEvent.class, e -> clear());
+        Events.on(TileChangeEvent.class, e -> clear());
+        Events.on(BuildTeamChangeEvent.class, e -> clear());
+        Events.on(ConfigEvent.class, e -> clear());
+    }
+
+    /** Writes world data for a joining player. */
+    public void write(Player player, OutputStream os) throws IOException{
+        long currentFrame = Core.graphics.getFrameId();
+
+        if(map == null || frame != currentFrame){
+            long start = Time.nanos();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            NetworkIO.writeWorldMap(out);
+
+            map = out.toByteArray();
+            frame = currentFrame;
+            writeTime = Time.timeSinceNanos(start) / 1000000f;
+            misses++;
+        }else{
+            hits++;
+            savedTime += writeTime;
+        }
+
+        NetworkIO.writeWorld(player, map, os);
+    }
+
+    public void clear(){
+        map = null;
+    }
+}
@@ -0,0 +1,146 @@
+package mindustry.world;
+
+import arc.*;
+import mindustry.content.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.world.blocks.*;
+import mindustry.world.blocks.environment.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Packed collision flags and building teams of every tile, for collision checks and raycasts that run for many tiles.
+ * Rebuilt when the world loads, and kept up to date with tile and team changes.
+ * Solidity of buildings that can change on its own, e.g. doors, is marked with {@link #bitDynamic} and is checked on the building itself;
+ * blocks like that must set {@link Block#solidifes}.
+ * When the world has been resized without loading, the flags are calculated from tiles directly.
+ */
+public class CollisionGrid{
+    public static final int
+    /** The block or floor is solid. */
+    bitSolid = 1,
+    /** There is a building, which may be solid depending on its state; see {@link Building#checkSolid()}. */
+    bitDynamic = 2,
+    bitBuilding = 4,
+    bitLiquid = 8,
+    /** Solid for units with legs. */
+    bitLegSolid = 16,
+    /** Bullets that collide with the floor hit this tile. */
+    bitSurface = 32,
+    bitStaticWall = 64,
+    /** Flags of tiles out of bounds. */
+    outside = bitSolid | bitLegSolid;
+
+    private Tiles tiles;
+    private byte[] flags = {};
+    private byte[] teams = {};
+
+    public CollisionGrid(){
+        Events.on(WorldLoadEvent.class, e -> rebuild());
+        Events.on(TileChangeEvent.class, e -> updateBuilding(e.tile));
+        Events.on(BuildTeamChangeEvent.class, e -> updateBuilding(e.build.tile));
+    }
+
+    public void rebuild(){
+        tiles = world.tiles;
+        flags = new byte[tiles.width * tiles.height];
+        teams = new byte[flags.length];
+
+        for(int i = 0; i < flags.length; i++){
+            update(tiles.geti(i));
+        }
+    }
+
+    /** Updates the flags of a tile, for changes that do not fire a {@link TileChangeEvent}, like floors. */
+    public void update(Tile tile){
+        if(!valid() || tile.x >= tiles.width || tile.y >= tiles.height || tiles.getc(tile.x, tile.y) != tile) return;
+
+        int index = tile.array();
+        flags[index] = (byte)compute(tile);
+        teams[index] = (byte)tile.getTeamID();
+    }
+
+    /** @return whether flags are stored for the current world. */
+    public boolean valid(){
+        return tiles == world.tiles;
+    }
+
+    /** @return flags of a tile; {@link #outside} for tiles out of bounds. */
+    public int get(int x, int y){
+        if(!valid()){
+            Tile tile = world.tile(x, y);
+            return tile == null ? outside : compute(tile);
+        }
+
+        if(x < 0 || y < 0 || x >= tiles.width || y >= tiles.height) return outside;
+        return flags[x + y * tiles.width];
+    }
+
+    /** @return id of the team that owns the building on a tile; only meaningful with {@link #bitBuilding}. */
+    public int team(int x, int y){
+        if(!valid()){
+            Tile tile = world.tile(x, y);
+            return tile == null ? 0 : tile.getTeamID();
+        }
+
+        return teams[x + y * tiles.width] & 0xff;
+    }
+
+    /** Same as {@link Tile#solid()}. */
+    public boolean solid(int x, int y){
+        int bits = get(x, y);
+        return (bits & bitSolid) != 0 || ((bits & bitDynamic) != 0 && dynamicSolid(x, y));
+    }
+
+    /** Same as {@link mindustry.entities.EntityCollisions#legsSolid}. */
+    public boolean legSolid(int x, int y){
+        return (get(x, y) & bitLegSolid) != 0;
+    }
+
+    /** Same as {@link mindustry.entities.EntityCollisions#waterSolid}. */
+    public boolean waterSolid(int x, int y){
+        return solid(x, y) || (get(x, y) & bitLiquid) == 0;
+    }
+
+    private boolean dynamicSolid(int x, int y){
+        Building build = world.build(x, y);
+        return build != null && build.checkSolid();
+    }
+
+    private void updateBuilding(Tile tile){
+        if(!valid()) return;
+
+        //other tiles of a multiblock change without events
+        Building build = tile.build;
+        if(build != null && build.block.isMultiblock()){
+            int offset = -(build.block.size - 1) / 2;
+            for(int dx = 0; dx < build.block.size; dx++){
+                for(int dy = 0; dy < build.block.size; dy++){
+                    Tile other = world.tile(build.tile.x + dx + offset, build.tile.y + dy + offset);
+                    if(other != null) update(other);
+                }
+            }
+        }else{
+            update(tile);
+        }
+    }
+
+    private static int compute(Tile tile){
+        Block block = tile.block();
+        Floor floor = tile.floor();
+        int bits = 0;
+
+        if(block.solid || floor.solid) bits |= bitSolid;
+        if(tile.build != null){
+            bits |= bitBuilding;
+            if(block.solidifes || block instanceof ConstructBlock) bits |= bitDynamic;
+        }
+        if(floor.isLiquid) bits |= bitLiquid;
+        if(tile.staticDarkness() >= 2 || (floor.solid && block == Blocks.air)) bits |= bitLegSolid;
+        if(floor.hasSurface() || block != Blocks.air) bits |= bitSurface;
+        if(block instanceof StaticWall) bits |= bitStaticWall;
+
+        return bits;
+    }
+}
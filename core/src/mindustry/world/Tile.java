@@ -279,6 +279,9 @@ public class Tile implements Position, QuadTreeObject, Displayable{
         }
 
         recache();
+        if(!world.isGenerating()){
+            world.collisions.update(this);
+        }
         if(build != null){
             build.onProximityUpdate();
         }
@@ -33,6 +33,11 @@ public class Conveyor extends Block implements Autotiler{
     public float displayedSpeed = 0f;
 
     public @Nullable Block junctionReplacement, bridgeReplacement;
+    /**
+     * Whether straight runs of these conveyors are moved together in a {@link ConveyorLine}.
+     * Should be disabled for conveyors that change how items are accepted or handled.
+     */
+    public boolean lineUpdates = true;
 
     public Conveyor(String name){
         super(name);
@@ -136,6 +141,9 @@ public class Conveyor extends Block implements Autotiler{
 
         public float clogHeat = 0f;
 
+        /** Line that moves the items of this conveyor; null when it has not been built yet. */
+        public @Nullable ConveyorLine line;
+
         @Override
         public void draw(){
             int frame = enabled && clogHeat <= 0.5f ? (int)(((Time.time * speed * 8f * timeScale)) % 4) : 0;
@@ -213,6 +221,20 @@ public class Conveyor extends Block implements Autotiler{
             next = front();
             nextc = next instanceof ConveyorBuild && next.team == team ? (ConveyorBuild)next : null;
             aligned = nextc != null && rotation == next.rotation;
+
+            //neighbors are notified as well, so this splits and merges lines on both sides
+            if(line != null) line.invalidate();
+        }
+
+        @Override
+        public void onRemoved(){
+            super.onRemoved();
+            if(line != null) line.invalidate();
+        }
+
+        /** @return the next conveyor, if it can be in the same {@link ConveyorLine} as this one. */
+        public @Nullable ConveyorBuild chained(){
+            return lineUpdates && aligned && ((Conveyor)nextc.block).lineUpdates ? nextc : null;
         }
 
         @Override
@@ -244,13 +266,44 @@ public class Conveyor extends Block implements Autotiler{
 
         @Override
         public void updateTile(){
+            if(lineUpdates){
+                if(line == null) ConveyorLine.build(this);
+
+                if(line.head != this){
+                    //moved by the head, only stays awake while holding items
+                    if(len == 0){
+                        sleep();
+                    }else{
+                        noSleep();
+                    }
+                }else if(line.update()){
+                    noSleep();
+                }else{
+                    sleep();
+                }
+                return;
+            }
+
+            moveItems(false);
+
+            if(len == 0){
+                sleep();
+            }else{
+                noSleep();
+            }
+        }
+
+        /**
+         * Moves items forward, and out of this conveyor.
+         * @param direct whether items are inserted into {@link #nextc} directly; only valid when it is aligned and accepts any item.
+         */
+        public void moveItems(boolean direct){
             minitem = 1f;
             mid = 0;
 
             //skip updates if possible
             if(len == 0){
                 clogHeat = 0f;
-                sleep();
                 return;
             }
 
@@ -267,7 +320,7 @@ public class Conveyor extends Block implements Autotiler{
                 if(ys[i] > 0.5 && i > 0) mid = i - 1;
                 xs[i] = Mathf.approach(xs[i], 0, moved*2);
 
-                if(ys[i] >= 1f && pass(ids[i])){
+                if(ys[i] >= 1f && (direct ? nextc.insert(ids[i]) : pass(ids[i]))){
                     //align X position if passing forwards
                     if(aligned){
                         nextc.xs[nextc.lastInserted] = xs[i];
@@ -285,8 +338,19 @@ public class Conveyor extends Block implements Autotiler{
             }else{
                 clogHeat = 0f;
             }
+        }
+
+        /** Inserts an item from the previous conveyor in a line. Same as {@link #handleItem} from an aligned conveyor, without any checks on the source. */
+        public boolean insert(Item item){
+            if(len >= capacity || minitem < itemSpace) return false;
 
             noSleep();
+            items.add(item, 1);
+            add(0);
+            xs[0] = 0;
+            ys[0] = 0;
+            ids[0] = item;
+            return true;
         }
 
         public boolean pass(Item item){
@@ -339,6 +403,7 @@ public class Conveyor extends Block implements Autotiler{
             }
 
             noSleep();
+            wakeLine();
         }
 
         @Override
@@ -359,6 +424,7 @@ public class Conveyor extends Block implements Autotiler{
             float x = (ang == -1 || ang == 3) ? 1 : (ang == 1 || ang == -3) ? -1 : 0;
 
             noSleep();
+            wakeLine();
             items.add(item, 1);
 
             if(Math.abs(facing.relativeTo(tile.x, tile.y) - r) == 0){ //idx = 0
@@ -403,10 +469,17 @@ public class Conveyor extends Block implements Autotiler{
             }
 
             //this updates some state
-            updateTile();
+            moveItems(false);
         }
 
 
+        /** Wakes up the head of the line, which moves the items of this conveyor. */
+        public void wakeLine(){
+            if(line != null && line.head != this){
+                line.head.noSleep();
+            }
+        }
+
         public final void add(int o){
             for(int i = Math.max(o + 1, len); i > o; i--){
                 ids[i] = ids[i - 1];
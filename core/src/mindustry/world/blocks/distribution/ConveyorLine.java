@@ -0,0 +1,78 @@
+package mindustry.world.blocks.distribution;
+
+import arc.struct.*;
+import mindustry.gen.*;
+import mindustry.world.blocks.distribution.Conveyor.*;
+
+/**
+ * A straight run of conveyors that are moved together by the most downstream one, the head.
+ * Items pass between members directly, without {@link Building#acceptItem} and {@link Building#handleItem}.
+ * Items are still stored in the members, so nothing changes in the save format.
+ * Lines are thrown away whenever the proximity of a member changes, and are built again lazily.
+ */
+public class ConveyorLine{
+    /** Longer lines are split, so that lines never get big enough to cause stutters when they are rebuilt. */
+    public static final int maxLength = 512;
+
+    /** Members in update order; the head is first, and every member moves items into the previous one. */
+    final Seq<ConveyorBuild> members = new Seq<>(false, 16, ConveyorBuild.class);
+    ConveyorBuild head;
+
+    /** Creates the line that a conveyor belongs to. Conveyors that are already in a line are never taken. */
+    public static ConveyorLine build(ConveyorBuild start){
+        ConveyorLine line = new ConveyorLine();
+
+        ConveyorBuild head = start;
+        //the start has to stay within the length limit of the head
+        for(int i = 1; i < maxLength; i++){
+            ConveyorBuild next = head.chained();
+            if(next == null || next == start || next.line != null) break;
+            head = next;
+        }
+
+        line.head = head;
+        line.members.add(head);
+        head.line = line;
+
+        ConveyorBuild current = head;
+        while(line.members.size < maxLength && current.back() instanceof ConveyorBuild prev && prev.line == null && prev.chained() == current){
+            prev.line = line;
+            line.members.add(prev);
+            current = prev;
+        }
+
+        //the head may have gone to sleep while the line was broken
+        head.noSleep();
+        return line;
+    }
+
+    /**
+     * Moves the items of every member, from the head to the tail.
+     * @return whether any member still has items.
+     */
+    public boolean update(){
+        boolean any = false;
+        ConveyorBuild[] array = members.items;
+
+        for(int i = 0; i < members.size; i++){
+            ConveyorBuild member = array[i];
+            member.moveItems(member.aligned && member.nextc.line == this);
+            any |= member.len > 0;
+        }
+
+        return any;
+    }
+
+    /** Detaches all members, which build a new line on their next update. */
+    public void invalidate(){
+        ConveyorBuild[] array = members.items;
+        for(int i = 0; i < members.size; i++){
+            if(array[i].line == this) array[i].line = null;
+        }
+        members.clear();
+    }
+
+    public int size(){
+        return members.size;
+    }
+}
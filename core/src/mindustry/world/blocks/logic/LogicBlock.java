@@ -1,5 +1,6 @@
 package mindustry.world.blocks.logic;
 
+import arc.*;
 import arc.func.*;
 import arc.math.geom.*;
 import arc.scene.ui.layout.*;
@@ -22,12 +23,20 @@ import mindustry.world.blocks.ConstructBlock.*;
 import mindustry.world.meta.*;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import static mindustry.Vars.*;
 
 public class LogicBlock extends Block{
     private static final int maxByteLen = 1024 * 500;
+    /** Minimum amount of instructions in all processors for them to be run in parallel. */
+    private static final int parallelThreshold = 2000;
+    private static final int workerThreads = Math.max(OS.cores - 1, 1);
+    private static final Seq<LogicBuild> parallelBuilds = new Seq<>(false, 16, LogicBuild.class);
+    private static final ArrayList<Callable<Object>> workerTasks = new ArrayList<>();
+    private static @Nullable ExecutorService workers;
 
     public int maxInstructionScale = 5;
     public int instructionsPerTick = 1;
@@ -192,12 +201,76 @@ public class LogicBlock extends Block{
         }
     }
 
+    /**
+     * Runs processors in parallel, before buildings update. Called once per tick.
+     * Each processor runs instructions until it reaches one that has effects outside of the processor, such as {@code control} or {@code write}.
+     * Those, and everything after them, run in {@link LogicBuild#updateTile()} on the main thread in the usual order, so the result does not depend on threading.
+     */
+    public static void runParallel(){
+        long frame = Core.graphics.getFrameId();
+        parallelBuilds.clear();
+        int total = 0;
+
+        for(int i = 0; i < Groups.build.size(); i++){
+            if(Groups.build.index(i) instanceof LogicBuild build && build.enabled && build.loadBlock == null && build.executor.program != null && build.executor.initialized()){
+                build.preparedAmount = build.takeInstructions();
+                build.preparedFrame = frame;
+
+                if(build.preparedAmount > 0){
+                    parallelBuilds.add(build);
+                    total += build.preparedAmount;
+                }
+            }
+        }
+
+        int threads = Math.min(parallelBuilds.size, workerThreads);
+        //not worth the overhead of other threads, updateTile() will run everything
+        if(threads <= 1 || total < parallelThreshold){
+            parallelBuilds.clear();
+            return;
+        }
+
+        if(workers == null){
+            workers = Executors.newFixedThreadPool(workerThreads, r -> {
+                Thread thread = new Thread(r, "Logic Worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        workerTasks.clear();
+        for(int t = 0; t < threads; t++){
+            int offset = t;
+            workerTasks.add(Executors.callable(() -> {
+                for(int i = offset; i < parallelBuilds.size; i += threads){
+                    LogicBuild build = parallelBuilds.items[i];
+                    build.preparedAmount -= build.executor.runPure(build.preparedAmount);
+                }
+            }));
+        }
+
+        try{
+            for(Future<Object> result : workers.invokeAll(workerTasks)){
+                result.get();
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            throw new RuntimeException(e.getCause());
+        }finally{
+            parallelBuilds.clear();
+        }
+    }
+
     public class LogicBuild extends Building implements Ranged{
         /** logic "source code" as list of asm statements */
         public String code = "";
         public LExecutor executor = new LExecutor();
         public float accumulator = 0;
         public Seq<LogicLink> links = new Seq<>();
+        /** Instructions taken from the accumulator by {@link #runParallel()} that have not been run yet. */
+        public int preparedAmount;
+        public long preparedFrame = -1;
         public boolean checkedDuplicates = false;
 
         /** Block of code to run after load. */
@@ -427,19 +500,30 @@ public class LogicBlock extends Block{
             }
 
             if(enabled){
-                accumulator += edelta() * instructionsPerTick * (consValid() ? 1 : 0);
-
-                if(accumulator > maxInstructionScale * instructionsPerTick) accumulator = maxInstructionScale * instructionsPerTick;
+                //the instructions for this tick may have been taken already, and partially run in parallel
+                int amount = preparedFrame == Core.graphics.getFrameId() ? preparedAmount : takeInstructions();
+                preparedFrame = -1;
 
-                for(int i = 0; i < (int)accumulator; i++){
-                    if(executor.initialized()){
-                        executor.runOnce();
-                    }
-                    accumulator --;
+                if(executor.initialized()){
+                    executor.run(amount);
                 }
             }
         }
 
+        /** @return the amount of instructions to run this tick, which are removed from the accumulator. */
+        public int takeInstructions(){
+            accumulator += edelta() * instructionsPerTick * (consValid() ? 1 : 0);
+
+            if(accumulator > maxInstructionScale * instructionsPerTick) accumulator = maxInstructionScale * instructionsPerTick;
+
+            int amount = 0;
+            for(int i = 0; i < (int)accumulator; i++){
+                amount ++;
+                accumulator --;
+            }
+            return amount;
+        }
+
         @Override
         public byte[] config(){
             return compress(code, relativeConnections());
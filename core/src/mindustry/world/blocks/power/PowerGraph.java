@@ -7,11 +7,26 @@ import arc.util.*;
 import mindustry.gen.*;
 import mindustry.world.consumers.*;
 
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
 public class PowerGraph{
     private static final Queue<Building> queue = new Queue<>();
     private static final Seq<Building> outArray1 = new Seq<>();
     private static final Seq<Building> outArray2 = new Seq<>();
     private static final IntSet closedSet = new IntSet();
+    /** Graphs that may have been split by removed buildings or links, checked once per frame. */
+    private static final Seq<PowerGraph> pendingSplits = new Seq<>(false, 16, PowerGraph.class);
+    private static final Seq<Building> splitOrder = new Seq<>(false, 16, Building.class);
+    private static final IntSeq splitStarts = new IntSeq();
+
+    private static final byte flagPower = 1, flagValid = 2, flagBuffered = 4;
+    /** Minimum amount of buildings in all graphs for solving to be done in parallel. */
+    private static final int parallelThreshold = 4096;
+    private static final int solverThreads = Mathf.clamp(OS.cores - 1, 1, 4);
+    private static final Seq<PowerGraph> solveGraphs = new Seq<>(false, 16, PowerGraph.class);
+    private static final ArrayList<Callable<Object>> solverTasks = new ArrayList<>();
+    private static @Nullable ExecutorService solverPool;
 
     //do not modify any of these unless you know what you're doing!
     public final Seq<Building> producers = new Seq<>(false);
@@ -26,6 +41,16 @@ public class PowerGraph{
     private float energyDelta = 0f;
 
     private long lastFrameUpdated = -1;
+    private boolean splitQueued;
+
+    //packed solver data, see gather(), solve() and apply()
+    private float[] producerPower = {};
+    private float[] consumerRequested = {}, consumerCapacity = {}, consumerUsage = {}, consumerStatus = {};
+    private byte[] consumerFlags = {};
+    /** capacity of each battery, or -1 if it is disabled */
+    private float[] batteryCapacity = {}, batteryStatus = {};
+    private float solvedNeeded, solvedProduced, solvedStored, solvedCapacity, solvedBatteryUsed;
+
     private final int graphID;
     private static int lastGraphID;
 
@@ -205,58 +230,307 @@ public class PowerGraph{
     }
 
     public void update(){
+        //the first graph updated in a frame splits every graph that was disconnected since the last frame
+        if(pendingSplits.size > 0){
+            checkSplits();
+        }
+
         if(Core.graphics.getFrameId() == lastFrameUpdated){
             return;
-        }else if(!consumers.isEmpty() && consumers.first().cheating()){
-            //when cheating, just set status to 1
+        }else if(updateCheating()){
+            return;
+        }
+
+        lastFrameUpdated = Core.graphics.getFrameId();
+
+        gather();
+        solve();
+        apply();
+    }
+
+    /**
+     * Updates every graph with a building in {@link Groups#build} at once, before buildings update. Called once per tick.
+     * Inputs are packed into arrays on the main thread, independent graphs are solved in parallel, and the results are written back to the buildings.
+     * Graphs that were already updated this frame are skipped, and {@link #update()} does nothing for graphs updated here.
+     */
+    public static void updateAll(){
+        if(pendingSplits.size > 0){
+            checkSplits();
+        }
+
+        long frame = Core.graphics.getFrameId();
+        solveGraphs.clear();
+        int entries = 0;
+
+        for(int i = 0; i < Groups.build.size(); i++){
+            Building build = Groups.build.index(i);
+            if(build.power == null) continue;
+
+            PowerGraph graph = build.power.graph;
+            if(graph == null || graph.lastFrameUpdated == frame) continue;
+
+            graph.lastFrameUpdated = frame;
+            if(graph.updateCheating()) continue;
+
+            graph.gather();
+            solveGraphs.add(graph);
+            entries += graph.all.size;
+        }
+
+        int threads = Math.min(solveGraphs.size, solverThreads);
+
+        if(threads <= 1 || entries < parallelThreshold){
+            for(int i = 0; i < solveGraphs.size; i++){
+                solveGraphs.items[i].solve();
+            }
+        }else{
+            if(solverPool == null){
+                solverPool = Executors.newFixedThreadPool(solverThreads, r -> {
+                    Thread thread = new Thread(r, "Power Solver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            //graphs only touch their own packed data while solving
+            solverTasks.clear();
+            for(int t = 0; t < threads; t++){
+                int offset = t;
+                solverTasks.add(Executors.callable(() -> {
+                    for(int i = offset; i < solveGraphs.size; i += threads){
+                        solveGraphs.items[i].solve();
+                    }
+                }));
+            }
+
+            try{
+                for(Future<Object> result : solverPool.invokeAll(solverTasks)){
+                    result.get();
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            }catch(ExecutionException e){
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        for(int i = 0; i < solveGraphs.size; i++){
+            solveGraphs.items[i].apply();
+        }
+        solveGraphs.clear();
+    }
+
+    /** When cheating, just sets the status of every consumer to 1. @return whether this graph is cheating. */
+    private boolean updateCheating(){
+        if(!consumers.isEmpty() && consumers.first().cheating()){
             for(Building tile : consumers){
                 tile.power.status = 1f;
             }
 
             lastPowerNeeded = lastPowerProduced = 1f;
-            return;
+            return true;
         }
+        return false;
+    }
 
-        lastFrameUpdated = Core.graphics.getFrameId();
+    /** Packs the power values of every building into arrays. Main thread only. */
+    private void gather(){
+        int pc = producers.size, cc = consumers.size, bc = batteries.size;
+
+        if(producerPower.length < pc) producerPower = new float[pc];
+        if(consumerStatus.length < cc){
+            consumerRequested = new float[cc];
+            consumerCapacity = new float[cc];
+            consumerUsage = new float[cc];
+            consumerStatus = new float[cc];
+            consumerFlags = new byte[cc];
+        }
+        if(batteryStatus.length < bc){
+            batteryCapacity = new float[bc];
+            batteryStatus = new float[bc];
+        }
+
+        for(int i = 0; i < pc; i++){
+            Building producer = producers.get(i);
+            producerPower[i] = producer.getPowerProduction() * producer.delta();
+        }
+
+        for(int i = 0; i < cc; i++){
+            Building consumer = consumers.get(i);
+            Consumers consumes = consumer.block.consumes;
+            byte flags = 0;
+
+            if(consumes.hasPower()){
+                ConsumePower consumePower = consumes.getPower();
+                flags |= flagPower;
+                if(consumePower.buffered) flags |= flagBuffered;
+                if(otherConsumersAreValid(consumer, consumePower)) flags |= flagValid;
+
+                consumerRequested[i] = consumePower.requestedPower(consumer) * consumer.delta();
+                consumerCapacity[i] = consumePower.capacity;
+                consumerUsage[i] = consumePower.usage * consumer.delta();
+            }
+
+            consumerFlags[i] = flags;
+            consumerStatus[i] = consumer.power.status;
+        }
+
+        for(int i = 0; i < bc; i++){
+            Building battery = batteries.get(i);
+            Consumers consumes = battery.block.consumes;
+
+            //disabled batteries are neither charged nor used
+            batteryCapacity[i] = battery.enabled && consumes.hasPower() ? consumes.getPower().capacity : -1f;
+            batteryStatus[i] = battery.power.status;
+        }
+    }
+
+    /** Solves the packed power values. Only touches the data of this graph, so graphs can be solved in parallel. */
+    private void solve(){
+        int pc = producers.size, cc = consumers.size, bc = batteries.size;
+        float needed = 0f, produced = 0f, stored = 0f, totalCapacity = 0f;
+
+        for(int i = 0; i < pc; i++){
+            produced += producerPower[i];
+        }
+
+        for(int i = 0; i < cc; i++){
+            if((consumerFlags[i] & (flagPower | flagValid)) == (flagPower | flagValid)){
+                needed += consumerRequested[i];
+            }
+        }
 
-        float powerNeeded = getPowerNeeded();
-        float powerProduced = getPowerProduced();
+        for(int i = 0; i < bc; i++){
+            if(batteryCapacity[i] >= 0f){
+                stored += batteryStatus[i] * batteryCapacity[i];
+                totalCapacity += batteryCapacity[i];
+            }
+        }
 
-        lastPowerNeeded = powerNeeded;
-        lastPowerProduced = powerProduced;
+        solvedNeeded = needed;
+        solvedProduced = produced;
+        solvedStored = stored;
+        solvedCapacity = totalCapacity;
+        solvedBatteryUsed = 0f;
+
+        if(cc == 0 && pc == 0 && bc == 0) return;
+
+        boolean charged = false;
+
+        if(!Mathf.equal(needed, produced)){
+            if(needed > produced){
+                //use batteries
+                float missing = needed - produced;
+                if(!Mathf.equal(stored, 0f)){
+                    float used = Math.min(stored, missing);
+                    float consumedPowerPercentage = Math.min(1.0f, missing / stored);
+                    for(int i = 0; i < bc; i++){
+                        if(batteryCapacity[i] >= 0f){
+                            batteryStatus[i] *= (1f - consumedPowerPercentage);
+                        }
+                    }
+                    produced += used;
+                    solvedBatteryUsed = used;
+                }
+            }else{
+                //charge batteries
+                charged = true;
+                float excess = produced - needed, capacity = 0f;
+                for(int i = 0; i < bc; i++){
+                    if(batteryCapacity[i] >= 0f){
+                        capacity += (1f - batteryStatus[i]) * batteryCapacity[i];
+                    }
+                }
 
-        lastScaledPowerIn = (powerProduced + energyDelta) / Time.delta;
-        lastScaledPowerOut = powerNeeded / Time.delta;
-        lastCapacity = getTotalBatteryCapacity();
-        lastPowerStored = getBatteryStored();
+                if(!Mathf.equal(capacity, 0f)){
+                    float chargedPercent = Math.min(excess / capacity, 1f);
+                    for(int i = 0; i < bc; i++){
+                        if(batteryCapacity[i] > 0f){
+                            batteryStatus[i] += (1f - batteryStatus[i]) * chargedPercent;
+                        }
+                    }
+                    produced -= Math.min(excess, capacity);
+                }
+            }
+        }
+
+        //distribute even if not needed. this is because some might be requiring power but not using it; it updates consumers
+        float coverage = Mathf.zero(needed) && Mathf.zero(produced) && !charged && Mathf.zero(stored) ? 0f : Mathf.zero(needed) ? 1f : Math.min(1, produced / needed);
+        for(int i = 0; i < cc; i++){
+            byte flags = consumerFlags[i];
+            if((flags & flagPower) == 0) continue;
+
+            if((flags & flagBuffered) != 0){
+                if(!Mathf.zero(consumerCapacity[i])){
+                    //add an equal percentage of power to all buffers, based on the global power coverage in this graph
+                    consumerStatus[i] = Mathf.clamp(consumerStatus[i] + consumerRequested[i] * coverage / consumerCapacity[i]);
+                }
+            }else if((flags & flagValid) != 0){
+                //valid consumers get power as usual
+                consumerStatus[i] = coverage;
+            }else{
+                //invalid consumers get an estimate, if they were to activate
+                float status = Math.min(1, produced / (needed + consumerUsage[i]));
+                consumerStatus[i] = Float.isNaN(status) ? 0f : status;
+            }
+        }
+    }
+
+    /** Writes solved values back to the buildings, and updates statistics. Main thread only. */
+    private void apply(){
+        lastPowerNeeded = solvedNeeded;
+        lastPowerProduced = solvedProduced;
+
+        lastScaledPowerIn = (solvedProduced + energyDelta) / Time.delta;
+        lastScaledPowerOut = solvedNeeded / Time.delta;
+        lastCapacity = solvedCapacity;
+        lastPowerStored = solvedStored;
 
         powerBalance.add((lastPowerProduced - lastPowerNeeded + energyDelta) / Time.delta);
         energyDelta = 0f;
 
-        if(!(consumers.size == 0 && producers.size == 0 && batteries.size == 0)){
-            boolean charged = false;
-
-            if(!Mathf.equal(powerNeeded, powerProduced)){
-                if(powerNeeded > powerProduced){
-                    float powerBatteryUsed = useBatteries(powerNeeded - powerProduced);
-                    powerProduced += powerBatteryUsed;
-                    lastPowerProduced += powerBatteryUsed;
-                }else if(powerProduced > powerNeeded){
-                    charged = true;
-                    powerProduced -= chargeBatteries(powerProduced - powerNeeded);
+        lastPowerProduced += solvedBatteryUsed;
+
+        for(int i = 0; i < consumers.size; i++){
+            if((consumerFlags[i] & flagPower) != 0){
+                Building consumer = consumers.get(i);
+
+                //power status is a wake condition for sleeping buildings
+                if(consumer.power.status != consumerStatus[i] && consumer.isSleeping()){
+                    consumer.noSleep();
                 }
+                consumer.power.status = consumerStatus[i];
             }
+        }
 
-            distributePower(powerNeeded, powerProduced, charged);
+        for(int i = 0; i < batteries.size; i++){
+            if(batteryCapacity[i] >= 0f){
+                batteries.get(i).power.status = batteryStatus[i];
+            }
         }
     }
 
+    /** Merges two graphs. The smaller graph is always moved into the larger one, so either graph may be the one that remains. */
     public void addGraph(PowerGraph graph){
         if(graph == this) return;
 
+        if(graph.all.size > all.size){
+            graph.addGraph(this);
+            return;
+        }
+
+        if(graph.splitQueued){
+            queueSplit();
+        }
+
         for(Building tile : graph.all){
-            add(tile);
+            //skip buildings that were already removed from the other graph
+            if(tile.power.graph == graph){
+                add(tile);
+            }
         }
+        graph.clear();
     }
 
     public void add(Building build){
@@ -265,18 +539,22 @@ public class PowerGraph{
         if(build.power.graph != this || !build.power.init){
             build.power.graph = this;
             build.power.init = true;
-            all.add(build);
-
-            if(build.block.outputsPower && build.block.consumesPower && !build.block.consumes.getPower().buffered){
-                producers.add(build);
-                consumers.add(build);
-            }else if(build.block.outputsPower && build.block.consumesPower){
-                batteries.add(build);
-            }else if(build.block.outputsPower){
-                producers.add(build);
-            }else if(build.block.consumesPower){
-                consumers.add(build);
-            }
+            addList(build);
+        }
+    }
+
+    private void addList(Building build){
+        all.add(build);
+
+        if(build.block.outputsPower && build.block.consumesPower && !build.block.consumes.getPower().buffered){
+            producers.add(build);
+            consumers.add(build);
+        }else if(build.block.outputsPower && build.block.consumesPower){
+            batteries.add(build);
+        }else if(build.block.outputsPower){
+            producers.add(build);
+        }else if(build.block.consumesPower){
+            consumers.add(build);
         }
     }
 
@@ -310,39 +588,98 @@ public class PowerGraph{
         batteries.remove(build);
     }
 
-    /** Note that this does not actually remove the building from the graph;
-     * it creates *new* graphs that contain the correct buildings. */
+    /**
+     * Detaches a building from this graph. The rest of the graph is not split right away;
+     * instead, it is checked for disconnected parts once, the next time any graph updates. See {@link #checkSplits()}.
+     */
     public void remove(Building tile){
+        if(tile.power == null) return;
+
+        //give the removed building its own graph, so it is no longer considered part of this one
+        if(tile.power.graph == this){
+            new PowerGraph().add(tile);
+        }
+
+        queueSplit();
+    }
+
+    /** Queues this graph to be checked for disconnected parts, e.g. after a link was removed. */
+    public void queueSplit(){
+        if(!splitQueued){
+            splitQueued = true;
+            pendingSplits.add(this);
+        }
+    }
+
+    /** Splits all graphs with queued removals into their connected parts. Many removals in one graph only cost one pass over it. */
+    public static void checkSplits(){
+        //splitting may not queue other graphs, but iterate by index just in case
+        for(int i = 0; i < pendingSplits.size; i++){
+            pendingSplits.items[i].split();
+        }
+        pendingSplits.clear();
+    }
+
+    private void split(){
+        splitQueued = false;
+
+        splitOrder.clear();
+        splitStarts.clear();
+        closedSet.clear();
 
-        //go through all the connections of this tile
-        for(Building other : tile.getPowerConnections(outArray1)){
-            //a graph has already been assigned to this tile from a previous call, skip it
-            if(other.power.graph != this) continue;
+        //find connected parts, stored one after another in splitOrder
+        for(int i = 0; i < all.size; i++){
+            Building start = all.get(i);
+            if(start.power.graph != this || !closedSet.add(start.pos())) continue;
 
-            //create graph for this branch
-            PowerGraph graph = new PowerGraph();
-            graph.add(other);
-            //add to queue for BFS
+            splitStarts.add(splitOrder.size);
             queue.clear();
-            queue.addLast(other);
+            queue.addLast(start);
+
             while(queue.size > 0){
-                //get child from queue
                 Building child = queue.removeFirst();
-                //add it to the new branch graph
-                graph.add(child);
-                //go through connections
+                splitOrder.add(child);
+
                 for(Building next : child.getPowerConnections(outArray2)){
-                    //make sure it hasn't looped back, and that the new graph being assigned hasn't already been assigned
-                    //also skip closed tiles
-                    if(next != tile && next.power.graph != graph){
-                        graph.add(next);
+                    if(next.power.graph == this && closedSet.add(next.pos())){
                         queue.addLast(next);
                     }
                 }
             }
-            //update the graph once so direct consumers without any connected producer lose their power
-            graph.update();
         }
+
+        int parts = splitStarts.size;
+        //still connected, and no removed buildings to drop
+        if(parts <= 1 && splitOrder.size == all.size) return;
+
+        splitStarts.add(splitOrder.size);
+
+        //the largest part stays in this graph, so the fewest buildings are moved
+        int largest = 0;
+        for(int i = 1; i < parts; i++){
+            if(splitStarts.get(i + 1) - splitStarts.get(i) > splitStarts.get(largest + 1) - splitStarts.get(largest)){
+                largest = i;
+            }
+        }
+
+        clear();
+
+        for(int i = 0; i < parts; i++){
+            int from = splitStarts.get(i), to = splitStarts.get(i + 1);
+
+            if(i == largest){
+                for(int j = from; j < to; j++){
+                    addList(splitOrder.items[j]);
+                }
+            }else{
+                PowerGraph graph = new PowerGraph();
+                for(int j = from; j < to; j++){
+                    graph.add(splitOrder.items[j]);
+                }
+            }
+        }
+
+        splitOrder.clear();
     }
 
     private boolean otherConsumersAreValid(Building tile, Consume consumePower){
@@ -55,17 +55,9 @@ public class PowerNode extends PowerBlock{
                 power.links.removeValue(value);
                 if(valid) other.power.links.removeValue(entity.pos());
 
-                PowerGraph newgraph = new PowerGraph();
-
-                //reflow from this point, covering all tiles on this side
-                newgraph.reflow(entity);
-
-                if(valid && other.power.graph != newgraph){
-                    //create new graph for other end
-                    PowerGraph og = new PowerGraph();
-                    //reflow from other end
-                    og.reflow(other);
-                }
+                //the nodes may still be connected through other paths; check once at the start of the next graph update
+                power.graph.queueSplit();
+                if(valid) other.power.graph.queueSplit();
             }else if(linkValid(entity, other) && valid && power.links.size < maxNodes){
 
                 if(!power.links.contains(other.pos())){
@@ -227,6 +227,12 @@ public class Drill extends Block{
             return efficiency() > 0.01f && items.total() < itemCapacity;
         }
 
+        @Override
+        public boolean shouldSleep(){
+            //no ore, or no power or other requirements, with nothing left to dump
+            return super.shouldSleep() || dominantItem == null || (items.total() == 0 && warmup <= 0f && !consValid());
+        }
+
         @Override
         public float ambientVolume(){
             return efficiency() * (size * size) / 4f;
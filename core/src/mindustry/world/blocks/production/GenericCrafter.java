@@ -111,6 +111,20 @@ public class GenericCrafter extends Block{
             return (outputLiquid == null || !(liquids.get(outputLiquid.liquid) >= liquidCapacity - 0.001f)) && enabled;
         }
 
+        @Override
+        public boolean shouldSleep(){
+            if(super.shouldSleep()) return true;
+            //waiting for inputs or power, with nothing left to craft or dump
+            if(consValid() || warmup > 0f || progress >= 1f) return false;
+
+            if(outputItems != null){
+                for(ItemStack output : outputItems){
+                    if(items.has(output.item)) return false;
+                }
+            }
+            return outputLiquid == null || liquids.get(outputLiquid.liquid) <= 0.0001f;
+        }
+
         @Override
         public void updateTile(){
             if(consValid()){
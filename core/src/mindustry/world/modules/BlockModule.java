@@ -4,6 +4,9 @@ import arc.util.io.*;
 
 /** A class that represents compartmentalized tile entity state. */
 public abstract class BlockModule{
+    /** Whether this module was modified since it was last sent in a block snapshot. */
+    public boolean dirty = true;
+
     public abstract void write(Writes write);
 
     public void read(Reads read, boolean legacy){
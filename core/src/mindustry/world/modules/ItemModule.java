@@ -37,6 +37,7 @@ public class ItemModule extends BlockModule{
         total = other.total;
         takeRotation = other.takeRotation;
         System.arraycopy(other.items, 0, items, 0, items.length);
+        dirty = true;
     }
 
     public void update(boolean showFlow){
@@ -198,6 +199,7 @@ public class ItemModule extends BlockModule{
                 items[index] --;
                 total --;
                 takeRotation = index + 1;
+                dirty = true;
                 return content.item(index);
             }
         }
@@ -239,6 +241,7 @@ public class ItemModule extends BlockModule{
     public void set(Item item, int amount){
         total += (amount - items[item.id]);
         items[item.id] = amount;
+        dirty = true;
     }
 
     public void add(Iterable<ItemStack> stacks){
@@ -264,6 +267,7 @@ public class ItemModule extends BlockModule{
     private void add(int item, int amount){
         items[item] += amount;
         total += amount;
+        dirty = true;
         if(flow != null){
             cacheSums[item] += amount;
         }
@@ -280,6 +284,7 @@ public class ItemModule extends BlockModule{
 
         items[item.id] -= amount;
         total -= amount;
+        dirty = true;
     }
 
     public void remove(ItemStack[] stacks){
@@ -301,6 +306,7 @@ public class ItemModule extends BlockModule{
     public void clear(){
         Arrays.fill(items, 0);
         total = 0;
+        dirty = true;
     }
 
     @Override
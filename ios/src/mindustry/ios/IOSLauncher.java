@@ -21,7 +21,6 @@ import org.robovm.objc.block.*;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.*;
 
 import static mindustry.Vars.*;
 import static org.robovm.apple.foundation.NSPathUtilities.*;
@@ -219,7 +218,7 @@ public class IOSLauncher extends IOSApplication.Delegate{
 
                 if(SaveIO.isSaveValid(file)){
                     try{
-                        SaveMeta meta = SaveIO.getMeta(new DataInputStream(new InflaterInputStream(file.read(Streams.defaultBufferSize))));
+                        SaveMeta meta = SaveIO.getMeta(SaveIO.getStream(file));
                         if(meta.tags.containsKey("name")){
                             //is map
                             if(!ui.editor.isShown()){
@@ -4,6 +4,7 @@ import arc.ApplicationListener;
 import arc.Core;
 import arc.Events;
 import arc.files.Fi;
+import arc.struct.ObjectIntMap;
 import arc.struct.ObjectSet;
 import arc.struct.Seq;
 import arc.util.*;
@@ -35,6 +36,8 @@ import mindustry.core.GameState;
 import mindustry.core.GameState.State;
 import mindustry.core.Version;
 import mindustry.core.World;
+import mindustry.entities.Explosions;
+import mindustry.entities.SleepScheduler;
 import mindustry.game.EventType.*;
 import mindustry.game.Gamemode;
 import mindustry.game.Team;
@@ -42,6 +45,7 @@ import mindustry.gen.Call;
 import mindustry.gen.Groups;
 import mindustry.gen.Player;
 import mindustry.io.JsonIO;
+import mindustry.io.MetaIndex;
 import mindustry.io.SaveIO;
 import mindustry.linkit.PlayerManager;
 import mindustry.maps.Map;
@@ -53,6 +57,7 @@ import mindustry.net.Administration.PlayerInfo;
 import mindustry.net.Packets.KickReason;
 import mindustry.net.WorldReloader;
 import mindustry.type.Item;
+import mindustry.world.Block;
 import scala.Option;
 import scala.Some;
 import scala.reflect.ClassTag;
@@ -65,6 +70,7 @@ import java.net.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Scanner;
+import java.util.concurrent.*;
 
 import static arc.util.ColorCodes.*;
 import static arc.util.Log.*;
@@ -96,6 +102,9 @@ public class ServerControl implements ApplicationListener {
     private @Nullable
     Map nextMapOverride;
     private Interval autosaveCount = new Interval();
+    private ExecutorService autosaveExecutor = Threads.executor(1);
+    private @Nullable Future<?> autosaveTask;
+    private @Nullable MetaIndex saveIndex;
 
     private Thread socketThread;
     private ServerSocket serverSocket;
@@ -244,32 +253,51 @@ public class ServerControl implements ApplicationListener {
         Events.run(Trigger.update, () -> {
             if (state.isPlaying() && Config.autosave.bool()) {
                 if (autosaveCount.get(Config.autosaveSpacing.num() * 60)) {
+                    //the previous autosave is still being written; skip this one instead of queueing up snapshots
+                    if (autosaveTask != null && !autosaveTask.isDone()) {
+                        warn("Previous autosave is still in progress, skipping.");
+                        return;
+                    }
+
                     int max = Config.autosaveAmount.num();
 
                     //use map file name to make sure it can be saved
                     String mapName = (state.map.file == null ? "unknown" : state.map.file.nameWithoutExtension()).replace(" ", "_");
                     String date = autosaveDate.format(LocalDateTime.now());
 
-                    Seq<Fi> autosaves = saveDirectory.findAll(f -> f.name().startsWith("auto_"));
-                    autosaves.sort(f -> -f.lastModified());
-
-                    //delete older saves
-                    if (autosaves.size >= max) {
-                        for (int i = max - 1; i < autosaves.size; i++) {
-                            autosaves.get(i).delete();
-                        }
-                    }
-
                     String fileName = "auto_" + mapName + "_" + date + "." + saveExtension;
                     Fi file = saveDirectory.child(fileName);
                     info("Autosaving...");
 
+                    //capture the world on the main thread; compression and disk IO happen in the background
+                    byte[] data;
+                    long begin = Time.millis();
                     try {
-                        SaveIO.save(file);
-                        info("Autosave completed.");
+                        data = SaveIO.snapshot(null);
                     } catch (Throwable e) {
                         err("Autosave failed.", e);
+                        return;
                     }
+                    long pause = Time.timeSinceMillis(begin);
+
+                    autosaveTask = autosaveExecutor.submit(() -> {
+                        long writeBegin = Time.millis();
+                        try {
+                            SaveIO.writeSnapshot(file, data);
+
+                            //only delete older saves once the new one is safely written
+                            Seq<Fi> autosaves = saveDirectory.findAll(f -> f.name().startsWith("auto_") && f.extension().equals(saveExtension) && !f.name().contains("-backup."));
+                            autosaves.sort(f -> -f.lastModified());
+                            for (int i = max; i < autosaves.size; i++) {
+                                autosaves.get(i).delete();
+                                SaveIO.backupFileFor(autosaves.get(i)).delete();
+                            }
+
+                            info("Autosave completed. (main thread: @ms, background write: @ms)", pause, Time.timeSinceMillis(writeBegin));
+                        } catch (Throwable e) {
+                            err("Autosave failed.", e);
+                        }
+                    });
                 }
             }
         });
@@ -472,6 +500,7 @@ public class ServerControl implements ApplicationListener {
             } else {
                 info("Maps reloaded.");
             }
+            debug("@ changed map file(s) read, @ taken from the index.", maps.index().misses, maps.index().hits);
         });
 
         handler.register("status", "Display server status.", arg -> {
@@ -488,6 +517,18 @@ public class ServerControl implements ApplicationListener {
 
                 info("  @ FPS, @ MB used.", Core.graphics.getFramesPerSecond(), Core.app.getJavaHeap() / 1024 / 1024);
 
+                info("  Block sync: @ bytes last interval, @% of buildings sent", netServer.blockSnapshotBytes, (int) (netServer.blockSnapshotRatio * 100));
+
+                info("  Explosions: @ per tick, @ms per tick", Strings.fixed(Explosions.explosionsPerTick.rawMean(), 1), Strings.fixed(Explosions.timePerTick.rawMean(), 2));
+
+                if (netServer.worldCache.hits + netServer.worldCache.misses > 0) {
+                    info("  World data cache: @ hits, @ misses, @ms of map writing saved", netServer.worldCache.hits, netServer.worldCache.misses, (int) netServer.worldCache.savedTime);
+                }
+
+                if (Config.interestRadius.num() > 0) {
+                    info("  Interest radius: @ tiles, ~@ bytes saved last tick", Config.interestRadius.num(), netServer.interestBytesSaved);
+                }
+
                 if (Groups.player.size() > 0) {
                     info("  Players: @", Groups.player.size());
                     for (Player p : Groups.player) {
@@ -499,6 +540,32 @@ public class ServerControl implements ApplicationListener {
             }
         });
 
+        handler.register("buildings", "[amount]", "Display the blocks with the most updating and sleeping buildings.", arg -> {
+            if (state.isMenu()) {
+                err("Not hosting. Host a game first.");
+                return;
+            }
+
+            int amount = arg.length > 0 && Strings.canParsePositiveInt(arg[0]) ? Strings.parseInt(arg[0]) : 10;
+            ObjectIntMap<Block> active = new ObjectIntMap<>(), sleeping = new ObjectIntMap<>();
+            SleepScheduler.count(active, sleeping);
+
+            Seq<Block> blocks = content.blocks().select(b -> active.get(b) + sleeping.get(b) > 0);
+            blocks.sort(Structs.comparingInt(b -> -(active.get(b) + sleeping.get(b))));
+
+            int totalActive = 0, totalSleeping = 0;
+            for (Block block : blocks) {
+                totalActive += active.get(block);
+                totalSleeping += sleeping.get(block);
+            }
+
+            info("Buildings: @ updating, @ sleeping", totalActive, totalSleeping);
+            for (int i = 0; i < Math.min(amount, blocks.size); i++) {
+                Block block = blocks.get(i);
+                info("  &fi@&fr: @ / @", block.name, active.get(block), sleeping.get(block));
+            }
+        });
+
         handler.register("mods", "Display all loaded mods.", arg -> {
             if (!mods.list().isEmpty()) {
                 info("Mods:");
@@ -975,9 +1042,15 @@ public class ServerControl implements ApplicationListener {
 
         handler.register("saves", "List all saves in the save directory.", arg -> {
             info("Save files: ");
-            for (Fi file : saveDirectory.list()) {
-                if (file.extension().equals(saveExtension)) {
-                    info("| @", file.nameWithoutExtension());
+            Seq<Fi> files = Seq.with(saveDirectory.list()).select(f -> f.extension().equals(saveExtension));
+            if (saveIndex == null || !saveIndex.directory.equals(saveDirectory)) saveIndex = new MetaIndex(saveDirectory);
+            MetaIndex.Entry[] entries = saveIndex.resolve(files, maps.executor);
+
+            for (int i = 0; i < files.size; i++) {
+                if (entries[i] == null) {
+                    info("| @ &fi(unreadable)", files.get(i).nameWithoutExtension());
+                } else {
+                    info("| @ &fi(@, wave @)", files.get(i).nameWithoutExtension(), entries[i].tags.get("mapname", "unknown"), entries[i].tags.get("wave", "?"));
                 }
             }
         });
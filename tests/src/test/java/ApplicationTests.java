@@ -1,6 +1,7 @@
 import arc.*;
 import arc.backend.headless.*;
 import arc.files.*;
+import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
@@ -8,23 +9,37 @@ import arc.util.io.*;
 import arc.util.serialization.*;
 import arc.util.serialization.JsonValue.*;
 import mindustry.*;
+import mindustry.ai.*;
+import mindustry.ai.BlockIndexer.*;
+import mindustry.ai.Pathfinder.*;
+import mindustry.async.*;
+import mindustry.async.PhysicsProcess.*;
+import mindustry.async.PhysicsProcess.PhysicsWorld.*;
 import mindustry.content.*;
 import mindustry.core.*;
 import mindustry.core.GameState.*;
 import mindustry.ctype.*;
+import mindustry.entities.*;
 import mindustry.entities.units.*;
 import mindustry.game.*;
 import mindustry.gen.*;
 import mindustry.io.*;
 import mindustry.io.SaveIO.*;
+import mindustry.io.versions.*;
+import mindustry.logic.*;
 import mindustry.maps.*;
 import mindustry.mod.*;
 import mindustry.mod.Mods.*;
 import mindustry.net.*;
 import mindustry.net.Packets.*;
+import mindustry.net.Streamable.*;
 import mindustry.type.*;
 import mindustry.world.*;
+import mindustry.world.blocks.distribution.*;
+import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.payloads.*;
+import mindustry.world.blocks.power.*;
+import mindustry.world.blocks.production.*;
 import mindustry.world.blocks.storage.*;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.*;
@@ -349,6 +364,60 @@ public class ApplicationTests{
         SaveIO.save(saveDirectory.child("0.msav"));
     }
 
+    @Test
+    void snapshotSave(){
+        world.loadMap(testMap);
+        world.tile(10, 10).setBlock(Blocks.copperWall, Team.sharded);
+        Fi file = saveDirectory.child("snapshot.msav");
+
+        byte[] data = SaveIO.snapshot(null);
+        SaveIO.writeSnapshot(file, data);
+
+        //regions are deflated when the snapshot is written, not when it is taken
+        assertTrue(file.length() < data.length);
+        assertTrue(SaveIO.getVersion().deflate);
+
+        resetWorld();
+        SaveIO.load(file);
+        assertEquals(Blocks.copperWall, world.tile(10, 10).block());
+        assertTrue(state.teams.playerCores().size > 0);
+
+        file.delete();
+        SaveIO.backupFileFor(file).delete();
+    }
+
+    @Test
+    void metaIndex(){
+        world.loadMap(testMap);
+        Fi directory = saveDirectory.child("index");
+        directory.deleteDirectory();
+
+        Seq<Fi> files = new Seq<>();
+        for(int i = 0; i < 20; i++){
+            Fi file = directory.child(i + ".msav");
+            SaveIO.save(file);
+            files.add(file);
+        }
+
+        MetaIndex.Entry[] entries = new MetaIndex(directory).resolve(files, maps.executor);
+        for(MetaIndex.Entry entry : entries){
+            assertNotNull(entry);
+            assertEquals(testMap.name(), entry.tags.get("mapname"));
+        }
+        assertTrue(directory.child(MetaIndex.fileName).exists());
+
+        //a new index reads the index file; only the changed save is read again
+        files.get(3).writeString("not a save");
+        MetaIndex index = new MetaIndex(directory);
+        entries = index.resolve(files, null);
+        assertEquals(1, index.misses);
+        assertEquals(19, index.hits);
+        assertNull(entries[3]);
+        assertEquals(SaveIO.getSaveWriter().version, entries[0].version);
+
+        directory.deleteDirectory();
+    }
+
     @Test
     void load(){
         world.loadMap(testMap);
@@ -363,6 +432,214 @@ public class ApplicationTests{
         assertTrue(state.teams.playerCores().size > 0);
     }
 
+    @Test
+    void regionSaveBench(){
+        world.loadMap(testMap);
+
+        int size = 500;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        //a late-game base: belts full of items, walls and multiblocks, some of them across region borders
+        Rand rand = new Rand(4);
+        for(int y = 2; y < size - 4; y += 3){
+            for(int x = 2; x < size - 4; x += 4){
+                switch(rand.random(3)){
+                    case 0 -> world.tile(x, y).setBlock(Blocks.copperWall, Team.sharded);
+                    case 1 -> world.tile(x, y).setBlock(Blocks.mechanicalDrill, Team.sharded);
+                    case 2 -> world.tile(x, y).setBlock(Blocks.thoriumWallLarge, Team.crux);
+                    default -> {
+                        for(int i = 0; i < 3; i++){
+                            world.tile(x + i, y).setBlock(Blocks.conveyor, Team.sharded, 0);
+                            world.tile(x + i, y).build.handleStack(Items.copper, 2, null);
+                        }
+                    }
+                }
+            }
+        }
+
+        int[] blocks = new int[size * size], floors = new int[size * size];
+        for(int i = 0; i < blocks.length; i++){
+            blocks[i] = world.tiles.geti(i).blockID();
+            floors[i] = world.tiles.geti(i).floorID();
+        }
+
+        SaveVersion[] versions = {SaveIO.getSaveWriter(5), SaveIO.getSaveWriter(6)};
+        for(SaveVersion version : versions){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            Time.mark();
+            SaveIO.write(SaveIO.writeStream(out, version), null, version);
+            float saveTime = Time.elapsed();
+            byte[] bytes = out.toByteArray();
+
+            Time.mark();
+            SaveIO.load(new ByteArrayInputStream(bytes), world.context);
+            float loadTime = Time.elapsed();
+
+            Log.info("Save version @: saved in @ms, loaded in @ms, @ KB, peak heap @ MB", version.version, saveTime, loadTime, bytes.length / 1024, SaveIO.loadPeakMemory / 1024 / 1024);
+
+            assertEquals(size, world.width());
+            if(version instanceof Save6 regions){
+                Log.info("Save version 6 decode buffers: @ KB", regions.decodeBufferSize() / 1024);
+                assertTrue(regions.decodeBufferSize() > 0);
+            }
+            for(int i = 0; i < blocks.length; i++){
+                assertEquals(blocks[i], world.tiles.geti(i).blockID(), "Block at " + world.tiles.geti(i));
+                assertEquals(floors[i], world.tiles.geti(i).floorID(), "Floor at " + world.tiles.geti(i));
+            }
+        }
+    }
+
+    @Test
+    void streamChunkBench(){
+        byte[] data = new byte[4 * 1024 * 1024];
+        new Rand(2).nextBytes(data);
+
+        ArcNetProvider.PacketSerializer serializer = new ArcNetProvider.PacketSerializer();
+        ByteBuffer buffer = ByteBuffer.allocate(16384);
+
+        //512 byte copies, as sent before, and chunks of the stream's own array
+        for(int chunkSize : new int[]{512, 8000}){
+            StreamBytes stream = new StreamBytes(data, 0, data.length);
+            StreamBegin begin = new StreamBegin();
+            begin.total = stream.available();
+            begin.type = Net.getPacketId(new WorldStream());
+            StreamBuilder builder = new StreamBuilder(begin);
+            int packets = 0;
+
+            Time.mark();
+            while(stream.available() > 0){
+                int length = Math.min(chunkSize, stream.available());
+                StreamChunk chunk = chunkSize == 512 ?
+                    new StreamChunk(begin.id, java.util.Arrays.copyOfRange(data, stream.position(), stream.position() + length), 0, length) :
+                    new StreamChunk(begin.id, stream.bytes(), stream.position(), length);
+                stream.advance(length);
+
+                buffer.clear();
+                serializer.write(buffer, chunk);
+                buffer.flip();
+                StreamChunk read = (StreamChunk)serializer.read(buffer);
+                builder.add(read.data, read.offset, read.length);
+                packets++;
+            }
+            float time = Time.elapsed();
+
+            Log.info("Chunks of @ bytes: @ packets in @ms", chunkSize, packets, time);
+
+            assertTrue(builder.isDone());
+            Streamable result = builder.build();
+            assertTrue(result instanceof WorldStream);
+            byte[] received = new byte[result.stream.available()];
+            result.stream.read(received, 0, received.length);
+            assertArrayEquals(data, received);
+        }
+    }
+
+    @Test
+    void snapshotBaselines() throws IOException{
+        SnapshotBaselines server = new SnapshotBaselines(), client = new SnapshotBaselines();
+        int id = 7;
+        byte[] first = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+
+        //no baseline yet: written in full
+        int seq0 = server.nextSequence();
+        byte[] packet = writeState(server, id, first);
+        assertEquals(0, packet[0]);
+        assertArrayEquals(first, client.read(stateInput(packet), id, seq0));
+        client.received(seq0);
+        server.acknowledge(client.lastReceived(), client.receivedMask());
+
+        //one changed word: type, baseline, length, one mask byte and the word
+        byte[] second = first.clone();
+        second[5] = 50;
+        int seq1 = server.nextSequence();
+        packet = writeState(server, id, second);
+        assertEquals(1, packet[0]);
+        assertEquals(seq0, ByteBuffer.wrap(packet).getInt(1));
+        assertEquals(1 + 4 + 2 + 1 + 4, packet.length);
+        assertArrayEquals(second, client.read(stateInput(packet), id, seq1));
+        client.received(seq1);
+
+        //the acknowledgement of seq1 is lost, so the next delta is still relative to seq0, with two changed words
+        byte[] third = second.clone();
+        third[15] = 60;
+        int seq2 = server.nextSequence();
+        packet = writeState(server, id, third);
+        assertEquals(seq0, ByteBuffer.wrap(packet).getInt(1));
+        assertEquals(1 + 4 + 2 + 1 + 8, packet.length);
+
+        //seq2 is lost as well; the mask of seq3 marks seq1 and seq0 as received, but not seq2
+        int seq3 = server.nextSequence();
+        packet = writeState(server, id, third);
+        assertArrayEquals(third, client.read(stateInput(packet), id, seq3));
+        client.received(seq3);
+        assertEquals(seq3, client.lastReceived());
+        assertEquals(0b110, client.receivedMask());
+        server.acknowledge(client.lastReceived(), client.receivedMask());
+
+        //nothing changed since the acknowledged seq3
+        int seq4 = server.nextSequence();
+        packet = writeState(server, id, third);
+        assertEquals(seq3, ByteBuffer.wrap(packet).getInt(1));
+        assertEquals(1 + 4 + 2 + 1, packet.length);
+        assertArrayEquals(third, client.read(stateInput(packet), id, seq4));
+        client.received(seq4);
+
+        //states of a different length are written in full
+        byte[] longer = java.util.Arrays.copyOf(third, 20);
+        int seq5 = server.nextSequence();
+        packet = writeState(server, id, longer);
+        assertEquals(0, packet[0]);
+        assertArrayEquals(longer, client.read(stateInput(packet), id, seq5));
+        client.received(seq5);
+
+        //an acknowledgement that arrives after its state left the history is ignored, so there is no baseline left
+        for(int i = 0; i < SnapshotBaselines.historySize; i++){
+            int seq = server.nextSequence();
+            packet = writeState(server, id, longer);
+            assertArrayEquals(longer, client.read(stateInput(packet), id, seq));
+            client.received(seq);
+        }
+        server.acknowledge(seq5, 0);
+        int seq10 = server.nextSequence();
+        packet = writeState(server, id, longer);
+        assertEquals(0, packet[0]);
+        assertArrayEquals(longer, client.read(stateInput(packet), id, seq10));
+        client.received(seq10);
+        server.acknowledge(client.lastReceived(), client.receivedMask());
+
+        //the client dropped its baselines, e.g. after a world reload: the delta can't be decoded, but the entities after it still are
+        client.reset();
+        int other = 8, seq11 = server.nextSequence();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        server.write(out, id, longer);
+        server.write(out, other, first);
+        out.close();
+
+        DataInputStream in = stateInput(bytes.toByteArray());
+        assertEquals(1, bytes.toByteArray()[0]);
+        assertNull(client.read(in, id, seq11));
+        assertArrayEquals(first, client.read(in, other, seq11));
+        assertEquals(0, in.available());
+    }
+
+    byte[] writeState(SnapshotBaselines baselines, int id, byte[] state) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)){
+            baselines.write(out, id, state);
+        }
+        return bytes.toByteArray();
+    }
+
+    DataInputStream stateInput(byte[] packet){
+        return new DataInputStream(new ByteArrayInputStream(packet));
+    }
+
     void updateBlocks(int times){
         for(Tile tile : world.tiles){
             if(tile.build != null && tile.isCenter()){
@@ -550,6 +827,154 @@ public class ApplicationTests{
         world.tile(0, 0).build.acceptStack(Items.copper, 1000, null);
     }
 
+    @Test
+    void sleepingBuildings(){
+        Graphics lastGraphics = Core.graphics;
+        //power graphs are only solved once per frame
+        Core.graphics = new power.FakeGraphics();
+
+        try{
+            Tiles tiles = world.resize(16, 16);
+
+            world.beginMapLoad();
+            for(int x = 0; x < tiles.width; x++){
+                for(int y = 0; y < tiles.height; y++){
+                    tiles.set(x, y, new Tile(x, y, Blocks.stone, x < 4 && y < 4 ? Blocks.oreCopper : Blocks.air, Blocks.air));
+                }
+            }
+            world.endMapLoad();
+            state.set(State.playing);
+
+            //a smelter with items, next to a power source that is turned off
+            world.tile(4, 8).setBlock(Blocks.siliconSmelter, Team.sharded, 0);
+            world.tile(6, 8).setBlock(Blocks.powerSource, Team.sharded, 0);
+            //a powered smelter without items
+            world.tile(8, 12).setBlock(Blocks.siliconSmelter, Team.sharded, 0);
+            world.tile(10, 12).setBlock(Blocks.powerSource, Team.sharded, 0);
+            //drills with and without ore
+            world.tile(1, 1).setBlock(Blocks.mechanicalDrill, Team.sharded, 0);
+            world.tile(12, 4).setBlock(Blocks.mechanicalDrill, Team.sharded, 0);
+
+            Building unpowered = world.tile(4, 8).build, source = world.tile(6, 8).build, empty = world.tile(8, 12).build;
+            Building drill = world.tile(1, 1).build, oreless = world.tile(12, 4).build;
+            Groups.build.each(Building::updateProximity);
+
+            //disabled like a processor would, so it stays off for a while
+            source.control(LAccess.enabled, 0, 0, 0, 0);
+            unpowered.items.add(Items.coal, 1);
+            unpowered.items.add(Items.sand, 2);
+
+            updateTicks(70);
+
+            assertTrue(unpowered.isSleeping(), "Unpowered crafter should sleep");
+            assertTrue(empty.isSleeping(), "Crafter without items should sleep");
+            assertTrue(oreless.isSleeping(), "Drill without ore should sleep");
+            assertFalse(drill.isSleeping(), "Drill on ore should not sleep");
+
+            //power status changes are applied by the power graph of the source, which is still updating
+            source.control(LAccess.enabled, 1, 0, 0, 0);
+            updateTicks(1);
+            assertFalse(unpowered.isSleeping(), "Crafter should wake up when it gets power");
+            updateTicks(60);
+            assertTrue(unpowered.items.has(Items.silicon));
+
+            empty.handleItem(null, Items.coal);
+            assertFalse(empty.isSleeping(), "Crafter should wake up when it receives items");
+
+            empty.sleepFor(10f);
+            assertTrue(empty.isSleeping());
+            updateTicks(9);
+            assertTrue(empty.isSleeping());
+            updateTicks(1);
+            assertFalse(empty.isSleeping(), "Crafter should wake up when its timer runs out");
+
+            //a full drill stays awake, as it has to dump its items as soon as a neighbour accepts them
+            drill.items.add(Items.copper, drill.block.itemCapacity);
+            updateTicks(70);
+            assertFalse(drill.isSleeping(), "Full drill should stay awake to dump");
+            drill.items.clear();
+            updateTicks(10);
+            assertTrue(((Drill.DrillBuild)drill).warmup > 0f);
+        }finally{
+            Core.graphics = lastGraphics;
+        }
+    }
+
+    /** Runs the building part of a game tick in the same order as {@link Logic#update()}. */
+    void updateTicks(int ticks){
+        for(int i = 0; i < ticks; i++){
+            Time.update();
+            SleepScheduler.update();
+            PowerGraph.updateAll();
+            Groups.build.update();
+        }
+    }
+
+    @Test
+    void explosionDamage(){
+        Tiles tiles = world.resize(20, 20);
+
+        world.beginMapLoad();
+        for(int x = 0; x < tiles.width; x++){
+            for(int y = 0; y < tiles.height; y++){
+                tiles.set(x, y, new Tile(x, y, Blocks.stone, Blocks.air, Blocks.air));
+            }
+        }
+        world.endMapLoad();
+        state.set(State.playing);
+
+        class TargetBuild extends Building{
+            float taken;
+            int hits;
+            @Nullable Team source;
+
+            @Override
+            public void damage(@Nullable Team source, float damage){
+                if(hits++ == 0) this.source = source;
+                taken += damage;
+                super.damage(source, damage);
+            }
+        }
+
+        Block target = new Block("explosion-target"){{
+            solid = true;
+            destructible = true;
+            health = 1000;
+            buildType = TargetBuild::new;
+        }};
+
+        //a weak building in front of a strong one, both in the path of explosions at (8, 10)
+        world.tile(10, 10).setBlock(target, Team.sharded);
+        world.tile(11, 10).setBlock(target, Team.sharded);
+        TargetBuild front = (TargetBuild)world.tile(10, 10).build, back = (TargetBuild)world.tile(11, 10).build;
+        front.health = 10f;
+
+        //damage of a ray at 2 and 3 tiles from the center of a radius 4 explosion, before buildings in front absorb any
+        float near = 100f * (1f - 4f / 16f + 0.6f) / 1.6f, far = 100f * (1f - 9f / 16f + 0.6f) / 1.6f;
+
+        Damage.tileDamage(Team.crux, 8, 10, 4f, 100f);
+        Damage.tileDamage(Team.blue, 8, 10, 4f, 100f);
+        //damage is dealt at the start of the next tick
+        assertEquals(0f, front.taken);
+        Explosions.update();
+
+        //every explosion sees the health at the start of the tick, even though the first one already destroys the front building
+        assertEquals(1, front.hits, "Damage should be applied once per building");
+        assertEquals(2f * near, front.taken, 0.001f, "Each explosion should deal the maximum of its rays, and be summed up");
+        assertEquals(2f * (far - 10f), back.taken, 0.001f, "Rays should lose the health of the front building");
+        assertTrue(front.dead());
+        //the first team to hit a building in a tick is credited for all damage
+        assertEquals(Team.crux, front.source);
+        assertEquals(Team.crux, back.source);
+
+        //the next tick takes a new snapshot, without the front building
+        Damage.tileDamage(Team.blue, 8, 10, 4f, 100f);
+        Explosions.update();
+
+        assertEquals(2, back.hits);
+        assertEquals(2f * (far - 10f) + far, back.taken, 0.001f);
+    }
+
     @Test
     void conveyorBench(){
         int[] itemsa = {0};
@@ -598,6 +1023,452 @@ public class ApplicationTests{
         assertNotEquals(0, itemsa[0]);
     }
 
+    @Test
+    void conveyorLineBench(){
+        int[] itemsa = {0};
+        Block sink = new Block("___"){{
+            hasItems = true;
+            destructible = true;
+            buildType = () -> new Building(){
+                @Override
+                public void handleItem(Building source, Item item){
+                    itemsa[0] ++;
+                }
+
+                @Override
+                public boolean acceptItem(Building source, Item item){
+                    return true;
+                }
+            };
+        }};
+
+        Conveyor conveyor = (Conveyor)Blocks.conveyor;
+        int[] results = new int[2];
+
+        try{
+            for(int mode = 0; mode < 2; mode++){
+                conveyor.lineUpdates = mode == 1;
+                itemsa[0] = 0;
+
+                //8 belts of 102 buildings, 15000 updates and 2 modes: about as many building updates as conveyorBench
+                int length = 100, belts = 8;
+                Tiles tiles = world.resize(length + 2, belts * 2);
+
+                world.beginMapLoad();
+                tiles.fill();
+                world.endMapLoad();
+                state.set(State.playing);
+
+                Seq<Building> entities = new Seq<>();
+
+                for(int b = 0; b < belts; b++){
+                    int y = b * 2;
+                    world.tile(0, y).setBlock(Blocks.itemSource, Team.sharded);
+                    world.tile(0, y).build.configureAny(Items.copper);
+                    entities.add(world.tile(0, y).build);
+
+                    for(int i = 0; i < length; i++){
+                        world.tile(i + 1, y).setBlock(conveyor, Team.sharded, 0);
+                        entities.add(world.tile(i + 1, y).build);
+                    }
+
+                    world.tile(length + 1, y).setBlock(sink, Team.sharded);
+                }
+
+                entities.each(Building::updateProximity);
+
+                //warmup, until the belts are full; items take about 33 ticks to cross a basic conveyor
+                for(int i = 0; i < 5000; i++){
+                    entities.each(Building::update);
+                }
+
+                itemsa[0] = 0;
+                Time.mark();
+                for(int i = 0; i < 10000; i++){
+                    entities.each(Building::update);
+                }
+                Log.info((conveyor.lineUpdates ? "Lines: " : "Per-tile: ") + Time.elapsed() + "ms to process " + itemsa[0] + " items");
+                results[mode] = itemsa[0];
+
+                if(conveyor.lineUpdates){
+                    ConveyorLine line = ((Conveyor.ConveyorBuild)world.build(1, 0)).line;
+                    assertNotNull(line);
+                    assertEquals(length, line.size());
+                }
+            }
+        }finally{
+            conveyor.lineUpdates = true;
+        }
+
+        assertNotEquals(0, results[0]);
+        //throughput should be the same; only the order that items move in within a frame differs
+        assertEquals(results[0], results[1], results[0] * 0.1f);
+    }
+
+    @Test
+    void spatialIndexBench(){
+        int amount = 5000, frames = 300;
+        Rect bounds = new Rect(0, 0, 400 * tilesize, 400 * tilesize);
+        Rand rand = new Rand(1);
+        Seq<PhysicsBody> bodies = new Seq<>();
+
+        for(int i = 0; i < amount; i++){
+            PhysicsBody body = new PhysicsBody();
+            body.x = rand.random(bounds.width);
+            body.y = rand.random(bounds.height);
+            body.radius = rand.random(4f, 20f);
+            bodies.add(body);
+        }
+
+        QuadTree<PhysicsBody> tree = new QuadTree<>(new Rect(bounds));
+        SpatialGrid<PhysicsBody> grid = new SpatialGrid<>(bounds);
+        Seq<PhysicsBody> out = new Seq<>();
+        Rect rect = new Rect();
+        long[] found = {0, 0};
+
+        for(int mode = 0; mode < 2; mode++){
+            Time.mark();
+            for(int frame = 0; frame < frames; frame++){
+                //move everything a little, as units would
+                for(PhysicsBody body : bodies){
+                    body.x = Mathf.clamp(body.x + Mathf.sinDeg(frame + body.radius * 10f) * 2f, 0, bounds.width);
+                    body.y = Mathf.clamp(body.y + Mathf.cosDeg(frame + body.radius * 10f) * 2f, 0, bounds.height);
+                }
+
+                if(mode == 0){
+                    tree.clear();
+                    for(PhysicsBody body : bodies) tree.insert(body);
+                }else{
+                    grid.beginUpdate();
+                    for(PhysicsBody body : bodies) grid.update(body);
+                    grid.endUpdate();
+                }
+
+                for(PhysicsBody body : bodies){
+                    body.hitbox(rect);
+                    rect.grow(16f);
+                    out.clear();
+                    if(mode == 0){
+                        tree.intersect(rect, out);
+                    }else{
+                        grid.intersect(rect, out);
+                    }
+                    found[mode] += out.size;
+                }
+            }
+            Log.info("@: @ms for @ frames of @ moving objects", mode == 0 ? "QuadTree rebuild" : "SpatialGrid update", Time.elapsed(), frames, amount);
+        }
+
+        assertEquals(found[0], found[1]);
+    }
+
+    @Test
+    void physicsBench() throws Exception{
+        int amount = 5000, frames = 200;
+        //a crowded wave, around 4 units per 8x8 tile area
+        Rect bounds = new Rect(0, 0, 300 * tilesize, 300 * tilesize);
+        java.util.concurrent.ForkJoinPool pool = java.util.concurrent.ForkJoinPool.commonPool();
+        float[][] results = new float[3][];
+
+        for(int mode = 0; mode < 3; mode++){
+            PhysicsSolver solver = mode == 0 ? new PhysicsWorld(bounds) : new PackedPhysicsWorld(bounds);
+            Rand rand = new Rand(1);
+            Seq<PhysicsBody> bodies = new Seq<>();
+
+            for(int i = 0; i < amount; i++){
+                PhysicsBody body = new PhysicsBody();
+                body.x = rand.random(bounds.width);
+                body.y = rand.random(bounds.height);
+                body.radius = rand.random(4f, 12f);
+                body.mass = body.radius * body.radius * Mathf.pi;
+                body.layer = 0;
+                bodies.add(body);
+                solver.add(body);
+            }
+
+            Time.mark();
+            for(int frame = 0; frame < frames; frame++){
+                if(mode == 1){
+                    //outside of a fork-join pool, the packed world runs on one thread
+                    solver.update();
+                }else{
+                    pool.submit(solver::update).get();
+                }
+            }
+            Log.info("@: @ms for @ frames of @ ground units", mode == 0 ? "PhysicsWorld" : mode == 1 ? "PackedPhysicsWorld, serial" : "PackedPhysicsWorld, parallel", Time.elapsed(), frames, amount);
+
+            results[mode] = new float[amount * 2];
+            for(int i = 0; i < amount; i++){
+                results[mode][i * 2] = bodies.get(i).x;
+                results[mode][i * 2 + 1] = bodies.get(i).y;
+            }
+        }
+
+        //the packed world gives the same result on any amount of threads
+        assertArrayEquals(results[1], results[2]);
+    }
+
+    @Test
+    void raycastBench(){
+        world.loadMap(testMap);
+        state.set(State.playing);
+
+        CollisionGrid grid = world.collisions;
+        assertTrue(grid.valid());
+
+        //place some buildings to hit
+        for(int x = 20; x < world.width() - 20; x += 6){
+            for(int y = 20; y < world.height() - 20; y += 6){
+                Tile tile = world.tile(x, y);
+                if(tile.block() == Blocks.air && !tile.floor().solid){
+                    tile.setBlock(Blocks.copperWall, Team.crux);
+                }
+            }
+        }
+
+        for(Tile tile : world.tiles){
+            assertEquals(tile.solid(), grid.solid(tile.x, tile.y), "Solidity of " + tile);
+            assertEquals(EntityCollisions.legsSolid(tile.x, tile.y), tile.staticDarkness() >= 2 || (tile.floor().solid && tile.block() == Blocks.air));
+            assertEquals(tile.build != null, (grid.get(tile.x, tile.y) & CollisionGrid.bitBuilding) != 0);
+        }
+
+        int rays = 200000;
+        Rand rand = new Rand(3);
+        int[] coords = new int[rays * 4];
+        for(int i = 0; i < coords.length; i += 2){
+            coords[i] = rand.random(world.width() - 1);
+            coords[i + 1] = rand.random(world.height() - 1);
+        }
+
+        long[] hits = new long[2];
+
+        for(int mode = 0; mode < 2; mode++){
+            Time.mark();
+            for(int i = 0; i < rays; i++){
+                int x = coords[i * 4], y = coords[i * 4 + 1], x1 = coords[i * 4 + 2], y1 = coords[i * 4 + 3];
+                int dx = Math.abs(x1 - x), sx = x < x1 ? 1 : -1;
+                int dy = Math.abs(y1 - y), sy = y < y1 ? 1 : -1;
+                int e2, err = dx - dy;
+
+                //same walk and checks as bullets that collide with terrain and enemy buildings
+                while(true){
+                    boolean hit;
+                    if(mode == 0){
+                        Tile tile = world.tile(x, y);
+                        Building build = world.build(x, y);
+                        hit = tile.block() instanceof StaticWall || (build != null && build.team != Team.sharded);
+                    }else{
+                        int flags = grid.get(x, y);
+                        hit = (flags & CollisionGrid.bitStaticWall) != 0 || ((flags & CollisionGrid.bitBuilding) != 0 && grid.team(x, y) != Team.sharded.id && world.build(x, y) != null);
+                    }
+
+                    if(hit){
+                        hits[mode] += x + y * world.width();
+                        break;
+                    }
+
+                    if(x == x1 && y == y1) break;
+
+                    e2 = 2 * err;
+                    if(e2 > -dy){
+                        err -= dy;
+                        x += sx;
+                    }
+
+                    if(e2 < dx){
+                        err += dx;
+                        y += sy;
+                    }
+                }
+            }
+            Log.info("@: @ms for @ raycasts", mode == 0 ? "Tiles" : "CollisionGrid", Time.elapsed(), rays);
+        }
+
+        assertEquals(hits[0], hits[1]);
+    }
+
+    @Test
+    void flagIndexQueries(){
+        Rand rand = new Rand(2);
+        TileArray array = new TileArray();
+        Seq<Tile> all = new Seq<>();
+        IntSet positions = new IntSet();
+
+        for(int i = 0; i < 2000; i++){
+            Tile tile = new Tile(rand.random(300), rand.random(300));
+            array.add(tile);
+            if(positions.add(tile.pos())) all.add(tile);
+        }
+
+        //remove some tiles, so that buckets are left partially empty
+        for(int i = 0; i < 500; i++){
+            Tile tile = all.remove(rand.random(all.size - 1));
+            array.remove(tile);
+        }
+
+        assertEquals(all.size, array.size());
+
+        Seq<Tile> out = new Seq<>();
+        for(int i = 0; i < 200; i++){
+            float x = rand.random(-50f, 350f) * tilesize, y = rand.random(-50f, 350f) * tilesize;
+
+            Tile expected = Geometry.findClosest(x, y, all);
+            assertEquals(expected.dst2(x, y), array.findClosest(x, y).dst2(x, y), 0.01f);
+
+            array.findClosest(x, y, 5, out);
+            Seq<Tile> sorted = all.copy().sort(Structs.comparingFloat(t -> t.dst2(x, y)));
+            assertEquals(5, out.size);
+            for(int j = 0; j < 5; j++){
+                assertEquals(sorted.get(j).dst2(x, y), out.get(j).dst2(x, y), 0.01f);
+            }
+
+            float range = rand.random(200f);
+            int[] found = {0};
+            array.intersect(x, y, range, t -> found[0]++);
+            assertEquals(all.count(t -> t.within(x, y, range)), found[0]);
+        }
+    }
+
+    @Test
+    void logicBench(){
+        String code = String.join("\n",
+        "set i 0",
+        "set sum 0",
+        "op add i i 1",
+        "op mul t i 2",
+        "op mod m t 7",
+        "op add sum sum m",
+        "op add step 3 4",
+        "op add @counter @counter 0",
+        "print sum",
+        "jump 2 lessThan i 100000",
+        "set done 1"
+        );
+
+        int amount = 2_000_000;
+        double[] sums = new double[2];
+        boolean lastCompile = LExecutor.compile;
+
+        try{
+            for(int mode = 0; mode < 2; mode++){
+                LExecutor.compile = mode == 1;
+                LExecutor exec = new LExecutor();
+                exec.load(code);
+
+                //warmup
+                for(int i = 0; i < 20; i++){
+                    exec.run(10000);
+                    exec.textBuffer.setLength(0);
+                }
+                exec.load(code);
+
+                Time.mark();
+                for(int i = 0; i < amount / 1000; i++){
+                    exec.run(1000);
+                    exec.textBuffer.setLength(0);
+                }
+                Log.info("@: @ms for @ instructions", mode == 0 ? "Interpreted" : "Compiled", Time.elapsed(), amount);
+
+                for(LExecutor.Var v : exec.vars){
+                    if(v.name.equals("sum")) sums[mode] = v.numval;
+                }
+            }
+        }finally{
+            LExecutor.compile = lastCompile;
+        }
+
+        assertTrue(sums[0] > 0);
+        assertEquals(sums[0], sums[1]);
+    }
+
+    @Test
+    void flowfieldBench(){
+        int size = 500;
+        Tiles tiles = world.resize(size, size);
+
+        world.beginMapLoad();
+        for(int x = 0; x < size; x++){
+            for(int y = 0; y < size; y++){
+                //walls every 10 tiles, with gaps that alternate sides
+                boolean wall = x % 10 == 5 && (x / 10 % 2 == 0 ? y < size - 3 : y > 2);
+                tiles.set(x, y, new Tile(x, y, Blocks.stone, Blocks.air, wall ? Blocks.stoneWall : Blocks.air));
+            }
+        }
+        world.endMapLoad();
+
+        int lastArea = Pathfinder.hierarchicalArea;
+        Pathfinder.hierarchicalArea = Integer.MAX_VALUE;
+
+        try{
+            Vec2 target = new Vec2(4f * tilesize, 4f * tilesize);
+
+            //warmup
+            for(int i = 0; i < 5; i++){
+                pathfinder.computeField(new PositionTarget(target));
+            }
+
+            int iterations = 20;
+            Flowfield field = null;
+
+            Time.mark();
+            for(int i = 0; i < iterations; i++){
+                field = pathfinder.computeField(new PositionTarget(target));
+            }
+            Log.info(Time.elapsed() / iterations + "ms to compute a " + size + "x" + size + " flow field");
+
+            assertEquals(0, field.weight(4, 4));
+            assertTrue(field.weight(size - 1, size - 1) > 0);
+            assertEquals(-1, field.weight(5, 0));
+        }finally{
+            Pathfinder.hierarchicalArea = lastArea;
+        }
+    }
+
+    @Test
+    void flowfieldClusters(){
+        int size = 500;
+        Tiles tiles = world.resize(size, size);
+
+        world.beginMapLoad();
+        for(int x = 0; x < size; x++){
+            for(int y = 0; y < size; y++){
+                //alternating walls, diagonal walls that cross cluster borders at odd places, and a closed box that can't be reached
+                boolean wall = (x % 10 == 5 && (x / 10 % 2 == 0 ? y < size - 3 : y > 2)) || (x + y) % 97 == 0 ||
+                    (x >= 300 && x <= 310 && y >= 300 && y <= 310 && (x == 300 || x == 310 || y == 300 || y == 310));
+                tiles.set(x, y, new Tile(x, y, Blocks.stone, Blocks.air, wall ? Blocks.stoneWall : Blocks.air));
+            }
+        }
+        world.endMapLoad();
+
+        int lastArea = Pathfinder.hierarchicalArea;
+
+        try{
+            Vec2 target = new Vec2(4f * tilesize, 4f * tilesize);
+
+            Pathfinder.hierarchicalArea = Integer.MAX_VALUE;
+            Flowfield flat = pathfinder.computeField(new PositionTarget(target));
+
+            Pathfinder.hierarchicalArea = 0;
+            Flowfield clustered = pathfinder.computeField(new PositionTarget(target));
+
+            assertNotNull(flat.weights);
+            assertNull(clustered.weights);
+
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    int expected = flat.weight(x, y);
+                    assertTrue(clustered.hasWeight(x, y), "cluster of " + x + ", " + y + " was not computed");
+                    //clusters mark tiles that can't reach the target as unknown rather than impassable
+                    assertEquals(expected == -1 ? FlowClusters.unknown : expected, clustered.weight(x, y), "weight of " + x + ", " + y);
+                }
+            }
+
+            assertEquals(FlowClusters.unknown, clustered.weight(305, 305));
+        }finally{
+            Pathfinder.hierarchicalArea = lastArea;
+        }
+    }
+
     @Test
     void load77Save(){
         resetWorld();
@@ -5,6 +5,7 @@ import arc.math.*;
 import arc.util.*;
 import mindustry.*;
 import mindustry.core.*;
+import mindustry.gen.*;
 import mindustry.world.*;
 import mindustry.world.blocks.power.*;
 import mindustry.world.blocks.power.PowerGenerator.*;
@@ -140,5 +141,59 @@ public class PowerTests extends PowerTestFixture{
                 assertFalse(consumePower.valid(consumerTile.build));
             }
         }
+
+        /** Deconstructs a line through a large battery grid, and makes sure the graph is split once, into the right parts. */
+        @Test
+        void largeGridDeconstruction(){
+            int size = 100, cut = size / 2;
+            Battery battery = createFakeBattery(100f);
+            Tile[][] tiles = new Tile[size][size];
+
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    tiles[x][y] = createFakeTile(x, y, battery);
+                }
+            }
+
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    Building build = tiles[x][y].build;
+                    if(x > 0) build.proximity.add(tiles[x - 1][y].build);
+                    if(y > 0) build.proximity.add(tiles[x][y - 1].build);
+                    if(x < size - 1) build.proximity.add(tiles[x + 1][y].build);
+                    if(y < size - 1) build.proximity.add(tiles[x][y + 1].build);
+                }
+            }
+
+            Time.mark();
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    tiles[x][y].build.updatePowerGraph();
+                }
+            }
+            Log.info("Merged @ buildings in @ms", size * size, Time.elapsed());
+
+            PowerGraph graph = tiles[0][0].build.power.graph;
+            assertEquals(size * size, graph.all.size);
+
+            Time.mark();
+            //remove a column, the way buildings are removed in game
+            for(int y = 0; y < size; y++){
+                Building build = tiles[cut][y].build;
+                build.power.graph.remove(build);
+                for(Building other : build.proximity){
+                    other.proximity.remove(build);
+                }
+            }
+            PowerGraph.checkSplits();
+            Log.info("Removed @ buildings from a graph of @ in @ms", size, size * size, Time.elapsed());
+
+            PowerGraph left = tiles[0][0].build.power.graph, right = tiles[size - 1][0].build.power.graph;
+            assertNotSame(left, right);
+            assertEquals(cut * size, left.all.size);
+            assertEquals((size - cut - 1) * size, right.all.size);
+            assertSame(left, tiles[cut - 1][size - 1].build.power.graph);
+            assertSame(right, tiles[cut + 1][size - 1].build.power.graph);
+        }
     }
 }